@@ -0,0 +1,3 @@
+-- Control de concurrencia optimista: cada actualización incrementa la versión de la fila
+-- y UserDAO.updateUser solo escribe si la versión sigue siendo la leída
+ALTER TABLE users ADD COLUMN version INT NOT NULL DEFAULT 0 AFTER age;
@@ -0,0 +1,6 @@
+-- IDs globales para repartir usuarios entre shards: UserIdGenerator reserva bloques de IDs
+-- en esta tabla en lugar de usar el AUTO_INCREMENT de cada shard. Solo hace falta en el primer shard
+CREATE TABLE IF NOT EXISTS user_id_sequence (
+    name VARCHAR(64) PRIMARY KEY,
+    next_id INT NOT NULL
+);
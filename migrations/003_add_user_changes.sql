@@ -0,0 +1,18 @@
+-- Registro de cambios (outbox): con UserDAO.setChangeFeedEnabled(true) cada alta, modificación
+-- o baja añade una fila en la misma transacción; UserChangeConsumer la lee en orden de seq
+CREATE TABLE IF NOT EXISTS user_changes (
+    seq BIGINT PRIMARY KEY AUTO_INCREMENT,
+    user_id INT NOT NULL,
+    change_type CHAR(1) NOT NULL,
+    name VARCHAR(100),
+    email VARCHAR(255),
+    age INT,
+    version INT,
+    changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+-- Posición de cada consumidor, para reanudar la lectura tras un reinicio
+CREATE TABLE IF NOT EXISTS user_change_offsets (
+    consumer VARCHAR(64) PRIMARY KEY,
+    last_seq BIGINT NOT NULL
+);
@@ -0,0 +1,27 @@
+-- updated_at pasa de TEXT a TIMESTAMP(3) mantenido por la base de datos en cada UPDATE, con un
+-- índice (updated_at, id) para leer solo los usuarios modificados (UserDAO.getUsersModifiedSince).
+-- Los valores que no son fechas válidas toman created_at
+ALTER TABLE users ADD COLUMN updated_at_new TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
+
+-- Con STRICT_TRANS_TABLES (modo por defecto) STR_TO_DATE sobre un valor mal formado aborta el
+-- UPDATE (error 1411) en lugar de devolver NULL: solo se convierten los valores con el formato
+-- esperado, y la conversión se ejecuta sin modo estricto por las fechas imposibles (mes 13...).
+-- Sin modo estricto una fecha fuera del rango de TIMESTAMP se guardaría como 0000-00-00 y no
+-- tomaría created_at, así que se exige que caiga entre 1970-01-01 00:00:01 y 2038-01-19 03:14:07
+-- UTC (segundos 1 a 2147483647 desde 1970, con la zona horaria de la sesión)
+SET @saved_sql_mode = @@SESSION.sql_mode;
+SET SESSION sql_mode = REPLACE(REPLACE(@@SESSION.sql_mode, 'STRICT_TRANS_TABLES', ''), 'STRICT_ALL_TABLES', '');
+
+UPDATE users
+SET updated_at_new = COALESCE(
+    CASE WHEN updated_at REGEXP '^[0-9]{4}-[0-9]{2}-[0-9]{2} [0-9]{2}:[0-9]{2}:[0-9]{2}$'
+              AND UNIX_TIMESTAMP(STR_TO_DATE(updated_at, '%Y-%m-%d %H:%i:%s')) BETWEEN 1 AND 2147483647
+         THEN STR_TO_DATE(updated_at, '%Y-%m-%d %H:%i:%s') END,
+    created_at, CURRENT_TIMESTAMP(3));
+
+SET SESSION sql_mode = @saved_sql_mode;
+
+ALTER TABLE users
+    DROP COLUMN updated_at,
+    CHANGE COLUMN updated_at_new updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    ADD INDEX idx_users_updated_at (updated_at, id);
@@ -4,8 +4,35 @@ id INTEGER PRIMARY KEY AUTO_INCREMENT,
     name VARCHAR(100) NOT NULL,
     email VARCHAR(255) UNIQUE NOT NULL,
     age INT NOT NULL,
+    version INT NOT NULL DEFAULT 0,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-updated_at TEXT DEFAULT CURRENT_TIMESTAMP
+    -- La base de datos lo actualiza en cada UPDATE; el índice sirve a getUsersModifiedSince
+    updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    INDEX idx_users_updated_at (updated_at, id)
+);
+
+-- Secuencia de IDs globales del modo por shards (ShardedUserDAO), en el primer shard
+CREATE TABLE IF NOT EXISTS user_id_sequence (
+    name VARCHAR(64) PRIMARY KEY,
+    next_id INT NOT NULL
+);
+
+-- Registro de cambios de usuarios (UserDAO.setChangeFeedEnabled), escrito en la misma transacción
+CREATE TABLE IF NOT EXISTS user_changes (
+    seq BIGINT PRIMARY KEY AUTO_INCREMENT,
+    user_id INT NOT NULL,
+    change_type CHAR(1) NOT NULL,
+    name VARCHAR(100),
+    email VARCHAR(255),
+    age INT,
+    version INT,
+    changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+);
+
+-- Última secuencia procesada por cada UserChangeConsumer
+CREATE TABLE IF NOT EXISTS user_change_offsets (
+    consumer VARCHAR(64) PRIMARY KEY,
+    last_seq BIGINT NOT NULL
 );
 
 -- Insert sample data (optional)
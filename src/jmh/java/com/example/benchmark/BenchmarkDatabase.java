@@ -0,0 +1,62 @@
+package com.example.benchmark;
+
+import com.example.BatchResult;
+import com.example.DatabaseConnection;
+import com.example.User;
+import com.example.UserDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base de datos H2 en memoria, en modo MySQL, usada por los benchmarks
+ * Los benchmarks la seleccionan con -Ddb.url al crear cada fork de la JVM
+ */
+public final class BenchmarkDatabase {
+
+    public static final String URL_PROPERTY =
+            "-Ddb.url=jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    public static final String USER_PROPERTY = "-Ddb.user=sa";
+    public static final String PASSWORD_PROPERTY = "-Ddb.password=";
+
+    private BenchmarkDatabase() {}
+
+    /**
+     * Crea la tabla users vacía, eliminando la anterior si existe
+     */
+    public static void createSchema() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS users");
+            stmt.execute("CREATE TABLE users ("
+                    + "id INTEGER PRIMARY KEY AUTO_INCREMENT, "
+                    + "name VARCHAR(100) NOT NULL, "
+                    + "email VARCHAR(255) UNIQUE NOT NULL, "
+                    + "age INT NOT NULL, "
+                    + "version INT NOT NULL DEFAULT 0, "
+                    + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                    + "updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3))");
+            stmt.execute("CREATE INDEX idx_users_updated_at ON users (updated_at, id)");
+        }
+    }
+
+    /**
+     * Crea la tabla y la llena con usuarios de IDs 1..rows
+     * @param dao el DAO usado para insertar
+     * @param rows número de usuarios
+     */
+    public static void populate(UserDAO dao, int rows) throws SQLException {
+        createSchema();
+        List<User> users = new ArrayList<>(rows);
+        for (int i = 1; i <= rows; i++) {
+            users.add(new User("User " + i, "user" + i + "@example.com", 18 + i % 60));
+        }
+        BatchResult result = dao.createUsers(users);
+        if (result.hasFailures()) {
+            throw new SQLException("Error poblando la tabla de benchmark: " + result.getFailures().get(0));
+        }
+    }
+}
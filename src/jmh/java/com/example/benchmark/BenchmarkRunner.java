@@ -0,0 +1,39 @@
+package com.example.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Ejecuta los benchmarks una vez por cada número de hilos y guarda los resultados en JSON
+ * Propiedades: jmh.threads (por ejemplo "1,4,16"), jmh.include (regex de benchmarks)
+ * y jmh.resultDir (directorio de salida). Cada ejecución genera result-threads-N.json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("jmh.include", ".*");
+        String threads = System.getProperty("jmh.threads", "1");
+        File resultDir = new File(System.getProperty("jmh.resultDir", "target/jmh"));
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new IllegalStateException("No se pudo crear " + resultDir);
+        }
+
+        for (String value : threads.split(",")) {
+            int count = Integer.parseInt(value.trim());
+            File result = new File(resultDir, "result-threads-" + count + ".json");
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(count)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath())
+                    .build();
+            new Runner(options).run();
+            System.out.println("Resultados guardados en " + result);
+        }
+    }
+}
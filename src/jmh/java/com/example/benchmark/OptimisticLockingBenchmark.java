@@ -0,0 +1,96 @@
+package com.example.benchmark;
+
+import com.example.DatabaseConnection;
+import com.example.User;
+import com.example.UserDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escrituras concurrentes sobre unas pocas filas: bloqueo optimista con reintentos
+ * (updateWithRetry) frente a leer con SELECT ... FOR UPDATE y escribir en una transacción
+ * Ejecutar con varios hilos (-Djmh.threads=1,4,16) para ver el efecto de la contención
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        BenchmarkDatabase.URL_PROPERTY,
+        BenchmarkDatabase.USER_PROPERTY,
+        BenchmarkDatabase.PASSWORD_PROPERTY})
+@State(Scope.Benchmark)
+public class OptimisticLockingBenchmark {
+
+    private static final int TABLE_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 100;
+
+    /** Filas entre las que se reparten las escrituras; menos filas, más contención */
+    @Param({"1", "16"})
+    public int hotRows;
+
+    private final UserDAO userDAO = new UserDAO();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.populate(userDAO, TABLE_SIZE);
+    }
+
+    @Benchmark
+    public User optimisticUpdate() throws SQLException {
+        return userDAO.updateWithRetry(hotId(), user -> user.setAge(nextAge(user.getAge())), MAX_ATTEMPTS);
+    }
+
+    @Benchmark
+    public int pessimisticUpdate() throws SQLException {
+        int id = hotId();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement select = conn.prepareStatement("SELECT age FROM users WHERE id = ? FOR UPDATE");
+                 PreparedStatement update = conn.prepareStatement(
+                         "UPDATE users SET age = ?, version = version + 1 WHERE id = ?")) {
+                select.setInt(1, id);
+                int age;
+                try (ResultSet rs = select.executeQuery()) {
+                    rs.next();
+                    age = rs.getInt(1);
+                }
+                update.setInt(1, nextAge(age));
+                update.setInt(2, id);
+                int rows = update.executeUpdate();
+                conn.commit();
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private int hotId() {
+        return ThreadLocalRandom.current().nextInt(1, hotRows + 1);
+    }
+
+    private static int nextAge(int age) {
+        return age >= 99 ? 18 : age + 1;
+    }
+}
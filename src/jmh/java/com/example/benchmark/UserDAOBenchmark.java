@@ -0,0 +1,115 @@
+package com.example.benchmark;
+
+import com.example.MeteredUserDAO;
+import com.example.User;
+import com.example.UserDAO;
+import com.example.UserDAOMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks de rendimiento y percentiles de latencia de las operaciones de UserDAO
+ * Throughput mide operaciones por segundo; SampleTime registra la distribución de latencias
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        BenchmarkDatabase.URL_PROPERTY,
+        BenchmarkDatabase.USER_PROPERTY,
+        BenchmarkDatabase.PASSWORD_PROPERTY})
+@State(Scope.Benchmark)
+public class UserDAOBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tableSize;
+
+    private final UserDAO userDAO = new UserDAO();
+    private final UserDAO meteredDAO = new MeteredUserDAO(new UserDAOMetrics(0));
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.populate(userDAO, tableSize);
+    }
+
+    /**
+     * Usuario recién creado por cada hilo para medir deleteUser sin vaciar la tabla
+     */
+    @State(Scope.Thread)
+    public static class Victim {
+        int id;
+
+        @Setup(Level.Invocation)
+        public void create(UserDAOBenchmark benchmark) throws SQLException {
+            id = benchmark.userDAO.createUser(benchmark.newUser()).getId();
+        }
+    }
+
+    @Benchmark
+    public User createUser() throws SQLException {
+        return userDAO.createUser(newUser());
+    }
+
+    @Benchmark
+    public User getUserById() throws SQLException {
+        return userDAO.getUserById(randomId());
+    }
+
+    /**
+     * Misma lectura que getUserById a través de MeteredUserDAO: la diferencia es el coste de medir
+     */
+    @Benchmark
+    public User getUserByIdMetered() throws SQLException {
+        return meteredDAO.getUserById(randomId());
+    }
+
+    @Benchmark
+    public List<User> getAllUsers() throws SQLException {
+        return userDAO.getAllUsers();
+    }
+
+    @Benchmark
+    public List<User> findUsersByName() throws SQLException {
+        // Término selectivo: coincide con pocos usuarios, como una búsqueda real
+        return userDAO.findUsersByName("User " + randomId() + "7");
+    }
+
+    @Benchmark
+    public boolean updateUser() throws SQLException {
+        int id = randomId();
+        return userDAO.updateUser(new User(id, "User " + id, "user" + id + "@example.com",
+                ThreadLocalRandom.current().nextInt(18, 80)));
+    }
+
+    @Benchmark
+    public boolean deleteUser(Victim victim) throws SQLException {
+        return userDAO.deleteUser(victim.id);
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, tableSize + 1);
+    }
+
+    private User newUser() {
+        long n = sequence.incrementAndGet();
+        return new User("Bench " + n, "bench" + n + "@example.com", 30);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.benchmark;
+
+import com.example.DatabaseConnection;
+import com.example.User;
+import com.example.UserDAO;
+import com.example.UserRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste por fila de convertir un ResultSet en User: lectura por nombre de columna
+ * sobre SELECT * frente a UserRowMapper con columnas explícitas leídas por índice
+ * Los ResultSet se recorren ya cargados para aislar el coste del mapeo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        BenchmarkDatabase.URL_PROPERTY,
+        BenchmarkDatabase.USER_PROPERTY,
+        BenchmarkDatabase.PASSWORD_PROPERTY})
+@State(Scope.Thread)
+public class UserRowMapperBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private Connection conn;
+    private ResultSet selectAll;
+    private ResultSet selectColumns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.populate(new UserDAO(), ROWS);
+        conn = DatabaseConnection.getConnection();
+        selectAll = open("SELECT * FROM users");
+        selectColumns = open("SELECT " + UserRowMapper.COLUMNS + " FROM users");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapByLabel(Blackhole blackhole) throws SQLException {
+        selectAll.beforeFirst();
+        while (selectAll.next()) {
+            blackhole.consume(new User(
+                selectAll.getInt("id"),
+                selectAll.getString("name"),
+                selectAll.getString("email"),
+                selectAll.getInt("age")
+            ));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapByIndex(Blackhole blackhole) throws SQLException {
+        selectColumns.beforeFirst();
+        while (selectColumns.next()) {
+            blackhole.consume(UserRowMapper.map(selectColumns));
+        }
+    }
+
+    private ResultSet open(String sql) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(sql,
+                ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        return pstmt.executeQuery();
+    }
+}
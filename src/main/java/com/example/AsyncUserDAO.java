@@ -0,0 +1,232 @@
+package com.example;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Fachada asíncrona de UserDAO: cada operación devuelve un CompletableFuture
+ * Las operaciones se ejecutan en un Executor configurable (hilos virtuales en Java 21+)
+ * y como máximo maxConcurrency a la vez, de modo que nunca se piden más conexiones
+ * de las que tiene el pool del DAO (UserDAO.getPoolMaxSize). Las demás esperan en cola sin ocupar hilos
+ */
+public class AsyncUserDAO implements AutoCloseable {
+
+    private final UserDAO userDAO;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final int maxConcurrency;
+
+    private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Crea una fachada con el executor por defecto y tantas operaciones
+     * concurrentes como conexiones tiene el pool del DAO (su enrutado, sus shards
+     * o el de DatabaseConnection)
+     * @param userDAO el DAO que ejecuta las operaciones
+     */
+    public AsyncUserDAO(UserDAO userDAO) {
+        this(userDAO, userDAO.getPoolMaxSize());
+    }
+
+    private AsyncUserDAO(UserDAO userDAO, int maxConcurrency) {
+        this(userDAO, defaultExecutor(maxConcurrency), maxConcurrency, true);
+    }
+
+    /**
+     * Crea una fachada sobre un executor propio; el llamador es responsable de cerrarlo
+     * @param userDAO el DAO que ejecuta las operaciones
+     * @param executor el executor donde se ejecutan las operaciones
+     * @param maxConcurrency número máximo de operaciones simultáneas
+     */
+    public AsyncUserDAO(UserDAO userDAO, Executor executor, int maxConcurrency) {
+        this(userDAO, executor, maxConcurrency, false);
+    }
+
+    private AsyncUserDAO(UserDAO userDAO, Executor executor, int maxConcurrency, boolean ownsExecutor) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+        }
+        this.userDAO = userDAO;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public CompletableFuture<User> createUser(User user) {
+        return submit(() -> userDAO.createUser(user));
+    }
+
+    public CompletableFuture<User> getUserById(int id) {
+        return submit(() -> userDAO.getUserById(id));
+    }
+
+    public CompletableFuture<Map<Integer, User>> getUsersByIds(Collection<Integer> ids) {
+        return submit(() -> userDAO.getUsersByIds(ids));
+    }
+
+    public CompletableFuture<User> getUserByEmail(String email) {
+        return submit(() -> userDAO.getUserByEmail(email));
+    }
+
+    public CompletableFuture<Set<String>> existsByEmails(Collection<String> emails) {
+        return submit(() -> userDAO.existsByEmails(emails));
+    }
+
+    public CompletableFuture<List<User>> getAllUsers() {
+        return submit(userDAO::getAllUsers);
+    }
+
+    public CompletableFuture<Boolean> updateUser(User user) {
+        return submit(() -> userDAO.updateUser(user));
+    }
+
+    public CompletableFuture<User> updateWithRetry(int id, Consumer<User> change, int maxAttempts) {
+        return submit(() -> userDAO.updateWithRetry(id, change, maxAttempts));
+    }
+
+    public CompletableFuture<Boolean> deleteUser(int id) {
+        return submit(() -> userDAO.deleteUser(id));
+    }
+
+    public CompletableFuture<List<User>> findUsersByName(String name) {
+        return submit(() -> userDAO.findUsersByName(name));
+    }
+
+    public CompletableFuture<UserPage> getUsersPage(int afterId, int limit) {
+        return submit(() -> userDAO.getUsersPage(afterId, limit));
+    }
+
+    public CompletableFuture<BatchResult> createUsers(Collection<User> users) {
+        return submit(() -> userDAO.createUsers(users));
+    }
+
+    public CompletableFuture<BatchResult> updateUsers(Collection<User> users) {
+        return submit(() -> userDAO.updateUsers(users));
+    }
+
+    public CompletableFuture<BatchResult> deleteUsers(int[] ids) {
+        return submit(() -> userDAO.deleteUsers(ids));
+    }
+
+    /**
+     * @return operaciones en ejecución en este momento
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return operaciones esperando un hueco de concurrencia
+     */
+    public int getQueued() {
+        return pending.size();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Cierra el executor si lo creó esta fachada; las operaciones en curso terminan
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        Task<T> task = new Task<>(call);
+        pending.add(task);
+        dispatch();
+        return task.future;
+    }
+
+    /**
+     * Lanza tareas pendientes mientras queden huecos de concurrencia
+     */
+    private void dispatch() {
+        while (!pending.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxConcurrency) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Task<?> task = pending.poll();
+            if (task == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        inFlight.decrementAndGet();
+                        dispatch();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Executor cerrado o saturado: la operación falla en lugar de quedar colgada
+                inFlight.decrementAndGet();
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Hilos virtuales si la JVM los soporta (Java 21+); si no, un pool fijo de hilos daemon
+     */
+    private static ExecutorService defaultExecutor(int maxConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxConcurrency, r -> {
+                Thread thread = new Thread(r, "async-user-dao-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private static final class Task<T> implements Runnable {
+        private final SqlCall<T> call;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task(SqlCall<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(call.call());
+            } catch (SQLException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una operación por lotes sobre usuarios
+ * Registra las filas afectadas por cada elemento y los fallos individuales
+ */
+public class BatchResult {
+
+    /** Valor de getRowCount() para un elemento que falló */
+    public static final int FAILED = -1;
+
+    private final int[] rowCounts;
+    private final List<Failure> failures = new ArrayList<>();
+
+    public BatchResult(int size) {
+        this.rowCounts = new int[size];
+    }
+
+    void setRowCount(int index, int count) {
+        rowCounts[index] = count;
+    }
+
+    void addFailure(int index, SQLException error) {
+        rowCounts[index] = FAILED;
+        failures.add(new Failure(index, error));
+    }
+
+    /**
+     * @return número de elementos enviados en el lote
+     */
+    public int size() {
+        return rowCounts.length;
+    }
+
+    /**
+     * Obtiene las filas afectadas por un elemento
+     * @param index posición del elemento en la colección de entrada
+     * @return filas afectadas, o FAILED si el elemento falló
+     */
+    public int getRowCount(int index) {
+        return rowCounts[index];
+    }
+
+    /**
+     * @return número de elementos que afectaron al menos una fila
+     */
+    public int getSuccessCount() {
+        int count = 0;
+        for (int rows : rowCounts) {
+            if (rows > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "size=" + size() +
+                ", succeeded=" + getSuccessCount() +
+                ", failures=" + failures.size() +
+                '}';
+    }
+
+    /**
+     * Fallo de un elemento individual del lote
+     */
+    public static class Failure {
+        private final int index;
+        private final SQLException error;
+
+        public Failure(int index, SQLException error) {
+            this.index = index;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public SQLException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{index=" + index + ", error=" + error.getMessage() + '}';
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.example;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Pool acotado de conexiones JDBC
+ * Entrega conexiones envueltas cuyo close() las devuelve al pool en lugar de cerrarlas,
+ * valida las conexiones al prestarlas, expulsa las conexiones ociosas y limita la espera.
+ * Cada conexión física guarda en caché sus sentencias preparadas para no volver a prepararlas
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    // Una conexión usada hace menos de este tiempo no se vuelve a validar al prestarla
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // Sentencias preparadas guardadas por cada conexión física
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // LIFO: la conexión usada más recientemente es la primera en reutilizarse
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private int total;
+    private int active;
+    private int waiters;
+    private boolean closed;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Crea un pool de conexiones
+     * @param url URL JDBC de la base de datos
+     * @param username usuario de la base de datos
+     * @param password contraseña de la base de datos
+     * @param maxSize número máximo de conexiones físicas abiertas
+     * @param maxWaitMillis tiempo máximo de espera por una conexión libre
+     * @param idleTimeoutMillis tiempo tras el cual se cierra una conexión ociosa
+     */
+    public ConnectionPool(String url, String username, String password,
+                          int maxSize, long maxWaitMillis, long idleTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Presta una conexión del pool, esperando como máximo maxWaitMillis
+     * @return una conexión cuyo close() la devuelve al pool
+     * @throws SQLException si el pool está cerrado, se agota la espera o falla la conexión
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pollFirst();
+                        active++;
+                        break;
+                    }
+                    if (total < maxSize) {
+                        total++;
+                        active++;
+                        create = true;
+                        break;
+                    }
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLTimeoutException("Timeout waiting for a connection after "
+                                + maxWaitMillis + " ms (maxSize=" + maxSize + ")");
+                    }
+                    waiters++;
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                Connection physical;
+                try {
+                    physical = DriverManager.getConnection(url, username, password);
+                } catch (SQLException | RuntimeException e) {
+                    discard(null);
+                    throw e;
+                }
+                createdCount.incrementAndGet();
+                candidate = new PooledConnection(physical);
+            } else if (!isAlive(candidate)) {
+                discard(candidate);
+                remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis) - (System.nanoTime() - start);
+                continue;
+            }
+
+            borrowCount.incrementAndGet();
+            borrowLatency.record(System.nanoTime() - start);
+            return candidate.lease();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connection pool uses fixed credentials");
+    }
+
+    /**
+     * @return instantánea de las estadísticas del pool
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(active, idle.size(), total, waiters, maxSize,
+                    borrowCount.get(), timeoutCount.get(), createdCount.get(), destroyedCount.get(),
+                    borrowLatency,
+                    statementCounters.hits.sum(), statementCounters.misses.sum(),
+                    statementCounters.evictions.sum(), statementCounters.prepareNanos.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return histograma de latencias de préstamo de conexiones
+     */
+    public LatencyHistogram getBorrowLatency() {
+        return borrowLatency;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return conexiones prestadas más hilos esperando, sin construir las estadísticas completas
+     */
+    public int getLoad() {
+        lock.lock();
+        try {
+            return active + waiters;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cierra el pool y todas las conexiones ociosas
+     * Las conexiones prestadas se cierran al devolverse
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        evictor.shutdownNow();
+        for (PooledConnection pc : toClose) {
+            pc.closePhysical();
+        }
+    }
+
+    private boolean isAlive(PooledConnection pc) {
+        if (System.nanoTime() - pc.lastUsedNanos < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        boolean reusable = pc.reset();
+        lock.lock();
+        try {
+            active--;
+            if (reusable && !closed) {
+                pc.lastUsedNanos = System.nanoTime();
+                idle.addFirst(pc);
+                available.signal();
+                return;
+            }
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        pc.closePhysical();
+    }
+
+    private void discard(PooledConnection pc) {
+        lock.lock();
+        try {
+            active--;
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (pc != null) {
+            pc.closePhysical();
+        }
+    }
+
+    private void evictIdle() {
+        List<PooledConnection> expired = new ArrayList<>();
+        long threshold = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                if (pc.lastUsedNanos < threshold) {
+                    it.remove();
+                    total--;
+                    expired.add(pc);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : expired) {
+            pc.closePhysical();
+        }
+    }
+
+    // Métodos de DataSource sin uso en el pool
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Conexión física gestionada por el pool
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, STATEMENT_CACHE_SIZE, statementCounters);
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class},
+                    new Lease(this));
+        }
+
+        /**
+         * Deja la conexión lista para el siguiente préstamo
+         * @return false si la conexión no puede reutilizarse
+         */
+        boolean reset() {
+            statements.releaseLeaked();
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (physical.isReadOnly()) {
+                    physical.setReadOnly(false);
+                }
+                physical.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            destroyedCount.incrementAndGet();
+            statements.closeAll();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error cerrando conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Préstamo de una conexión: intercepta close() e isClosed() y rechaza el uso tras cerrarla
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection owner;
+        private boolean returned;
+
+        Lease(PooledConnection owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(owner);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || owner.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + owner.physical + (returned ? ", returned" : "") + "]";
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection is closed");
+            }
+            // Solo se cachean las formas sin opciones de cursor; el resultado abierto y las propiedades
+            // que el llamador cambie en la sentencia se restablecen al devolverla (StatementCache)
+            if (method.getName().equals("prepareStatement")) {
+                if (args.length == 1) {
+                    return owner.statements.prepare((Connection) proxy, (String) args[0],
+                            Statement.NO_GENERATED_KEYS);
+                }
+                if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                    return owner.statements.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(owner.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
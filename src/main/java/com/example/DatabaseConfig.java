@@ -0,0 +1,229 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Configuración de acceso a la base de datos: servidor principal, réplicas de lectura y pools
+ * Los valores se leen, de menor a mayor prioridad, de los valores por defecto, del recurso
+ * db.properties del classpath, del fichero indicado en la propiedad de sistema db.config
+ * y de las propiedades de sistema con el mismo nombre
+ */
+public class DatabaseConfig {
+
+    /** Propiedad de sistema con la ruta de un fichero de configuración */
+    public static final String CONFIG_FILE_PROPERTY = "db.config";
+    /** Recurso del classpath leído si existe */
+    public static final String CONFIG_RESOURCE = "db.properties";
+
+    // rewriteBatchedStatements permite al driver enviar cada lote como una sola sentencia multi-fila;
+    // useServerPrepStmts prepara las sentencias en el servidor, que así analiza cada SQL una vez
+    // por conexión. La caché del driver (cachePrepStmts) queda desactivada: el pool ya reutiliza
+    // las sentencias preparadas con su StatementCache y una segunda caché duplicaría la memoria
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/testdb?rewriteBatchedStatements=true"
+            + "&useServerPrepStmts=true";
+
+    private static final String[] KEYS = {
+        "db.url", "db.user", "db.password",
+        "db.pool.maxSize", "db.pool.maxWaitMillis", "db.pool.idleTimeoutMillis",
+        "db.replicas", "db.replica.user", "db.replica.password", "db.replica.pool.maxSize",
+        "db.replica.routing", "db.readYourWritesMillis", "db.shards", "db.shard.idBlockSize"
+    };
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int poolMaxSize;
+    private final long poolMaxWaitMillis;
+    private final long poolIdleTimeoutMillis;
+    private final List<String> replicaUrls;
+    private final String replicaUsername;
+    private final String replicaPassword;
+    private final int replicaPoolMaxSize;
+    private final ReplicaRouter.Strategy routing;
+    private final long readYourWritesMillis;
+    private final List<String> shardUrls;
+    private final int idBlockSize;
+
+    /**
+     * Crea la configuración a partir de un conjunto de propiedades
+     * Las propiedades ausentes toman su valor por defecto
+     * @param properties propiedades db.* (ver README)
+     */
+    public DatabaseConfig(Properties properties) {
+        this.url = properties.getProperty("db.url", DEFAULT_URL);
+        this.username = properties.getProperty("db.user", "root");
+        this.password = properties.getProperty("db.password", "password");
+        this.poolMaxSize = intProperty(properties, "db.pool.maxSize", 10);
+        this.poolMaxWaitMillis = longProperty(properties, "db.pool.maxWaitMillis", 5000);
+        this.poolIdleTimeoutMillis = longProperty(properties, "db.pool.idleTimeoutMillis", 300000);
+
+        this.replicaUrls = urlList(properties, "db.replicas");
+        this.replicaUsername = properties.getProperty("db.replica.user", username);
+        this.replicaPassword = properties.getProperty("db.replica.password", password);
+        this.replicaPoolMaxSize = intProperty(properties, "db.replica.pool.maxSize", poolMaxSize);
+        this.routing = ReplicaRouter.Strategy.of(properties.getProperty("db.replica.routing", "round-robin"));
+        this.readYourWritesMillis = longProperty(properties, "db.readYourWritesMillis", 0);
+        this.shardUrls = urlList(properties, "db.shards");
+        this.idBlockSize = intProperty(properties, "db.shard.idBlockSize", 100);
+    }
+
+    /**
+     * Lee la configuración del recurso db.properties, del fichero db.config y de las propiedades de sistema
+     * @return la configuración resultante
+     * @throws IllegalStateException si el fichero indicado en db.config no se puede leer
+     */
+    public static DatabaseConfig load() {
+        Properties properties = new Properties();
+        try (InputStream in = DatabaseConfig.class.getClassLoader().getResourceAsStream(CONFIG_RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Error leyendo " + CONFIG_RESOURCE + ": " + e.getMessage());
+        }
+
+        String file = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (file != null) {
+            Path path = Paths.get(file);
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read database config " + path, e);
+            }
+        }
+
+        for (String key : KEYS) {
+            String value = System.getProperty(key);
+            if (value != null) {
+                properties.setProperty(key, value);
+            }
+        }
+        return new DatabaseConfig(properties);
+    }
+
+    /**
+     * Crea el pool del servidor principal
+     */
+    public ConnectionPool createPrimaryPool() {
+        return new ConnectionPool(url, username, password,
+                poolMaxSize, poolMaxWaitMillis, poolIdleTimeoutMillis);
+    }
+
+    /**
+     * Crea un pool por cada réplica configurada
+     */
+    public List<ConnectionPool> createReplicaPools() {
+        List<ConnectionPool> pools = new ArrayList<>(replicaUrls.size());
+        for (String replicaUrl : replicaUrls) {
+            pools.add(new ConnectionPool(replicaUrl, replicaUsername, replicaPassword,
+                    replicaPoolMaxSize, poolMaxWaitMillis, poolIdleTimeoutMillis));
+        }
+        return pools;
+    }
+
+    /**
+     * Crea un pool por cada shard configurado, con las credenciales y tamaños del principal
+     */
+    public List<ConnectionPool> createShardPools() {
+        List<ConnectionPool> pools = new ArrayList<>(shardUrls.size());
+        for (String shardUrl : shardUrls) {
+            pools.add(new ConnectionPool(shardUrl, username, password,
+                    poolMaxSize, poolMaxWaitMillis, poolIdleTimeoutMillis));
+        }
+        return pools;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getPoolMaxSize() {
+        return poolMaxSize;
+    }
+
+    public long getPoolMaxWaitMillis() {
+        return poolMaxWaitMillis;
+    }
+
+    public long getPoolIdleTimeoutMillis() {
+        return poolIdleTimeoutMillis;
+    }
+
+    /**
+     * @return URLs JDBC de las réplicas de lectura; vacía si todo va al servidor principal
+     */
+    public List<String> getReplicaUrls() {
+        return replicaUrls;
+    }
+
+    public int getReplicaPoolMaxSize() {
+        return replicaPoolMaxSize;
+    }
+
+    public ReplicaRouter.Strategy getRouting() {
+        return routing;
+    }
+
+    /**
+     * @return tiempo durante el cual un hilo lee del servidor principal tras escribir; 0 lo desactiva
+     */
+    public long getReadYourWritesMillis() {
+        return readYourWritesMillis;
+    }
+
+    /**
+     * @return URLs JDBC de los shards de ShardedUserDAO; vacía si no se usa el modo por shards
+     */
+    public List<String> getShardUrls() {
+        return shardUrls;
+    }
+
+    /**
+     * @return IDs reservados de una vez por UserIdGenerator en el modo por shards
+     */
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    private static List<String> urlList(Properties properties, String key) {
+        List<String> urls = new ArrayList<>();
+        for (String url : properties.getProperty(key, "").split(",")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(url.trim());
+            }
+        }
+        return Collections.unmodifiableList(urls);
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue) {
+        return (int) longProperty(properties, key, defaultValue);
+    }
+
+    private static long longProperty(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+        }
+    }
+}
@@ -1,33 +1,113 @@
 package com.example;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /**
  * Clase utilitaria para gestionar conexiones de base de datos
+ * Las conexiones se obtienen de pools acotados compartidos por toda la aplicación:
+ * las escrituras van al servidor principal y las lecturas pueden ir a réplicas
  */
 public class DatabaseConnection {
-    
-    private static final String URL = "jdbc:mysql://localhost:3306/testdb";
-    private static final String USERNAME = "root";
-    private static final String PASSWORD = "password";
-    
+
+    // Configuración leída de db.properties, del fichero db.config y de las propiedades de sistema
+    // (db.url, db.user, db.password, db.replicas...); ver DatabaseConfig
+    private static final DatabaseConfig CONFIG = DatabaseConfig.load();
+
+    private static volatile ReplicaRouter router;
+
     /**
-     * Obtiene una conexión a la base de datos MySQL
+     * Obtiene una conexión al servidor principal desde el pool
+     * Al cerrarla, la conexión vuelve al pool en lugar de cerrarse físicamente
      * @return objeto Connection
-     * @throws SQLException si la conexión falla
+     * @throws SQLException si la conexión falla o se agota la espera del pool
      */
     public static Connection getConnection() throws SQLException {
-        try {
-            // Cargar el driver JDBC de MySQL
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USERNAME, PASSWORD);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("Driver JDBC de MySQL no encontrado", e);
+        return getRouter().getConnection();
+    }
+
+    /**
+     * Obtiene una conexión para lecturas que admiten cierto retraso: de una réplica si hay
+     * réplicas configuradas, o del servidor principal en caso contrario
+     * @return objeto Connection
+     * @throws SQLException si la conexión falla o se agota la espera del pool
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return getRouter().getReadConnection();
+    }
+
+    /**
+     * Obtiene el pool de conexiones del servidor principal, creándolo en el primer uso
+     * @return el pool compartido
+     * @throws SQLException si el driver JDBC no está disponible
+     */
+    public static ConnectionPool getPool() throws SQLException {
+        return getRouter().getPrimary();
+    }
+
+    /**
+     * Obtiene el enrutado entre el servidor principal y las réplicas, creando sus pools en el primer uso
+     * @return el enrutado compartido
+     * @throws SQLException si el driver JDBC no está disponible
+     */
+    public static ReplicaRouter getRouter() throws SQLException {
+        ReplicaRouter current = router;
+        if (current == null) {
+            synchronized (DatabaseConnection.class) {
+                current = router;
+                if (current == null) {
+                    if (CONFIG.getUrl().startsWith("jdbc:mysql:")) {
+                        try {
+                            // Cargar el driver JDBC de MySQL
+                            Class.forName("com.mysql.cj.jdbc.Driver");
+                        } catch (ClassNotFoundException e) {
+                            throw new SQLException("Driver JDBC de MySQL no encontrado", e);
+                        }
+                    }
+                    current = new ReplicaRouter(CONFIG);
+                    router = current;
+                }
+            }
         }
+        return current;
+    }
+
+    /**
+     * @return la configuración de acceso a la base de datos
+     */
+    public static DatabaseConfig getConfig() {
+        return CONFIG;
+    }
+
+    /**
+     * @return número máximo de conexiones del pool
+     */
+    public static int getPoolMaxSize() {
+        return CONFIG.getPoolMaxSize();
     }
     
+    /**
+     * Obtiene las estadísticas actuales del pool de conexiones
+     * @return instantánea de las estadísticas
+     * @throws SQLException si el pool no puede crearse
+     */
+    public static PoolStats getPoolStats() throws SQLException {
+        return getPool().getStats();
+    }
+
+    /**
+     * Cierra los pools del servidor principal y de las réplicas
+     * Una llamada posterior a getConnection() crea pools nuevos
+     */
+    public static void shutdown() {
+        synchronized (DatabaseConnection.class) {
+            if (router != null) {
+                router.close();
+                router = null;
+            }
+        }
+    }
+
     /**
      * Cierra la conexión de base de datos de forma segura
      * @param connection la conexión a cerrar
@@ -41,4 +121,4 @@ public class DatabaseConnection {
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package com.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom con los emails registrados, usado como caché negativa de getUserByEmail y existsByEmails
+ * Si mightContain devuelve false el email no estaba registrado al construir el filtro ni se ha
+ * escrito después a través del DAO, y la consulta no llega a la base de datos; si devuelve true
+ * la base de datos decide (falsos positivos con la probabilidad configurada). Los emails se
+ * comparan sin mayúsculas ni acentos, como la collation por defecto de MySQL. Las bajas no se
+ * pueden quitar del filtro: solo aumentan los falsos positivos hasta reconstruirlo
+ */
+public class EmailBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private final AtomicLong negativeCount = new AtomicLong();
+    private final AtomicLong positiveCount = new AtomicLong();
+
+    /**
+     * @param expectedEmails número de emails que se espera guardar, incluido el crecimiento previsto
+     * @param falsePositiveRate probabilidad de falso positivo con expectedEmails emails, entre 0 y 1
+     */
+    public EmailBloomFilter(long expectedEmails, double falsePositiveRate) {
+        if (expectedEmails <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Required: expectedEmails > 0 and 0 < falsePositiveRate < 1");
+        }
+        // Tamaño óptimo: m = -n ln(p) / ln(2)^2 bits y k = m / n ln(2) funciones hash
+        long bits = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long words = Math.max(1, (bits + 63) / 64);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large");
+        }
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * Math.log(2)));
+    }
+
+    /**
+     * Añade un email al filtro; puede llamarse desde varios hilos a la vez
+     */
+    public void add(String email) {
+        long hash = hash(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * @return false si el email seguro que no se ha añadido; true si puede haberse añadido
+     */
+    public boolean mightContain(String email) {
+        long hash = hash(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                negativeCount.incrementAndGet();
+                return false;
+            }
+        }
+        positiveCount.incrementAndGet();
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * @return consultas respondidas como "no registrado" sin acceder a la base de datos
+     */
+    public long getNegativeCount() {
+        return negativeCount.get();
+    }
+
+    /**
+     * @return consultas que el filtro no pudo descartar
+     */
+    public long getPositiveCount() {
+        return positiveCount.get();
+    }
+
+    /**
+     * Hash de 64 bits (FNV-1a y mezcla final de MurmurHash3) del email normalizado
+     */
+    private static long hash(String email) {
+        String key = UserNameIndex.fold(email);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Usuarios ya cargados en la interfaz, indexados por ID y por trigramas del nombre
+ * Cubre el tramo contiguo de IDs leído hasta el cursor, de modo que una búsqueda puede
+ * responderse en memoria para ese tramo y pedir a la base de datos solo los IDs posteriores.
+ * Se usa desde el hilo de eventos y no está sincronizada
+ */
+public class LoadedUserIndex {
+
+    private final TreeMap<Integer, User> users = new TreeMap<>();
+    private final UserNameIndex names = new UserNameIndex();
+    private int cursor = UserPage.FIRST_PAGE;
+    private boolean complete;
+
+    /**
+     * Olvida los usuarios cargados para volver a empezar desde la primera página
+     */
+    public void clear() {
+        users.clear();
+        names.clear();
+        cursor = UserPage.FIRST_PAGE;
+        complete = false;
+    }
+
+    /**
+     * Añade la página siguiente del recorrido completo por ID
+     * @param page página obtenida con el cursor actual
+     */
+    public void addPage(UserPage page) {
+        for (User user : page.getUsers()) {
+            users.put(user.getId(), user);
+            names.put(user.getId(), user.getName());
+        }
+        cursor = page.getNextCursor();
+        complete = !page.hasMore();
+    }
+
+    /**
+     * Registra un usuario creado o actualizado si cae dentro del tramo cargado
+     */
+    public void put(User user) {
+        if (complete || user.getId() <= cursor) {
+            users.put(user.getId(), user);
+            names.put(user.getId(), user.getName());
+        }
+    }
+
+    public void remove(int id) {
+        if (users.remove(id) != null) {
+            names.remove(id);
+        }
+    }
+
+    /**
+     * @return todos los usuarios cargados, con el cursor para continuar el recorrido
+     */
+    public UserPage all() {
+        return new UserPage(new ArrayList<>(users.values()), cursor, !complete);
+    }
+
+    /**
+     * Busca por nombre entre los usuarios cargados, sin consultar la base de datos
+     * @param term texto a buscar, sin distinguir mayúsculas ni acentos
+     * @return los usuarios coincidentes ordenados por ID; si la página indica que hay más,
+     *         los IDs posteriores a su cursor aún no se han cargado
+     */
+    public UserPage search(String term) {
+        int[] ids = names.search(term);
+        List<User> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            found.add(users.get(id));
+        }
+        return new UserPage(found, cursor, !complete);
+    }
+
+    /**
+     * @return ID del último usuario del tramo cargado
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return true si se cargaron todos los usuarios
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int size() {
+        return users.size();
+    }
+}
@@ -1,5 +1,7 @@
 package com.example;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -7,6 +9,12 @@ public class Main {
     public static void main(String[] args) {
         UserDAO userDAO = new UserDAO();
 
+        // Modo transferencia: java com.example.Main import|export <fichero.csv|fichero.ndjson>
+        if (args.length == 2 && (args[0].equals("import") || args[0].equals("export"))) {
+            transfer(userDAO, args[0], args[1]);
+            return;
+        }
+
         try {
             // CREAR
             User newUser = new User("Alice", "alice@example.com", 28);
@@ -39,4 +47,20 @@ public class Main {
             System.out.println("Error de base de datos: " + e.getMessage());
         }
     }
+
+    private static void transfer(UserDAO userDAO, String mode, String file) {
+        UserTransfer transfer = new UserTransfer(userDAO);
+        try {
+            UserTransfer.Result result = mode.equals("import")
+                    ? transfer.importFrom(Paths.get(file))
+                    : transfer.exportTo(Paths.get(file));
+            System.out.println((mode.equals("import") ? "Importado: " : "Exportado: ") + result);
+        } catch (IOException e) {
+            System.out.println("Error de fichero: " + e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("Error de base de datos: " + e.getMessage());
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.example;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * UserDAO que mide cada operación en un UserDAOMetrics
+ * Separa la espera por la conexión del tiempo de consulta, cuenta filas y errores por SQLState
+ * y registra las llamadas lentas. Medir una llamada solo lee el reloj y suma contadores
+ */
+public class MeteredUserDAO extends UserDAO {
+
+    // Tiempo acumulado por cada hilo esperando conexiones; cada llamada resta el valor inicial
+    private static final ThreadLocal<long[]> ACQUIRE_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final UserDAOMetrics metrics;
+    private final OperationMetrics create;
+    private final OperationMetrics getById;
+    private final OperationMetrics getByIds;
+    private final OperationMetrics getByEmail;
+    private final OperationMetrics existsEmails;
+    private final OperationMetrics getAll;
+    private final OperationMetrics streamAll;
+    private final OperationMetrics getPage;
+    private final OperationMetrics modifiedSince;
+    private final OperationMetrics update;
+    private final OperationMetrics delete;
+    private final OperationMetrics find;
+    private final OperationMetrics findPage;
+    private final OperationMetrics createBatch;
+    private final OperationMetrics updateBatch;
+    private final OperationMetrics deleteBatch;
+    private final OperationMetrics changes;
+    private final OperationMetrics lastChange;
+    private final OperationMetrics purgeChanges;
+
+    /**
+     * Crea un DAO medido sin caché
+     * @param metrics el registro donde se acumulan las métricas
+     */
+    public MeteredUserDAO(UserDAOMetrics metrics) {
+        this(null, metrics);
+    }
+
+    /**
+     * Crea un DAO medido con caché; los aciertos de caché también se miden
+     * @param cache la caché de usuarios, o null para no usar caché
+     * @param metrics el registro donde se acumulan las métricas
+     */
+    public MeteredUserDAO(UserCache cache, UserDAOMetrics metrics) {
+        this(cache, null, metrics);
+    }
+
+    /**
+     * Crea un DAO medido que obtiene las conexiones de un ReplicaRouter propio; la espera por
+     * la conexión se mide igual en el principal y en las réplicas
+     * @param cache la caché de usuarios, o null para no usar caché
+     * @param router el enrutador de conexiones, o null para usar el pool global
+     * @param metrics el registro donde se acumulan las métricas
+     */
+    public MeteredUserDAO(UserCache cache, ReplicaRouter router, UserDAOMetrics metrics) {
+        super(cache, router);
+        this.metrics = metrics;
+        this.create = metrics.operation("createUser");
+        this.getById = metrics.operation("getUserById");
+        this.getByIds = metrics.operation("getUsersByIds");
+        this.getByEmail = metrics.operation("getUserByEmail");
+        this.existsEmails = metrics.operation("existsByEmails");
+        this.getAll = metrics.operation("getAllUsers");
+        this.streamAll = metrics.operation("streamAllUsers");
+        this.getPage = metrics.operation("getUsersPage");
+        this.modifiedSince = metrics.operation("getUsersModifiedSince");
+        this.update = metrics.operation("updateUser");
+        this.delete = metrics.operation("deleteUser");
+        this.find = metrics.operation("findUsersByName");
+        this.findPage = metrics.operation("findUsersByNamePage");
+        this.createBatch = metrics.operation("createUsers");
+        this.updateBatch = metrics.operation("updateUsers");
+        this.deleteBatch = metrics.operation("deleteUsers");
+        this.changes = metrics.operation("getChangesAfter");
+        this.lastChange = metrics.operation("getLastChangeSequence");
+        this.purgeChanges = metrics.operation("purgeChangesThrough");
+    }
+
+    public UserDAOMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public User createUser(User user) throws SQLException {
+        return measure(create, userDetail(user), () -> super.createUser(user), created -> 1);
+    }
+
+    @Override
+    public User getUserById(int id) throws SQLException {
+        return measure(getById, id, () -> super.getUserById(id), user -> user == null ? 0 : 1);
+    }
+
+    @Override
+    public Map<Integer, User> getUsersByIds(Collection<Integer> ids) throws SQLException {
+        return measure(getByIds, ids.size(), () -> super.getUsersByIds(ids), Map::size);
+    }
+
+    /**
+     * Las búsquedas que descarta el filtro de emails también se miden, con 0 filas
+     */
+    @Override
+    public User getUserByEmail(String email) throws SQLException {
+        return measure(getByEmail, emailDetail(email), () -> super.getUserByEmail(email), user -> user == null ? 0 : 1);
+    }
+
+    @Override
+    public Set<String> existsByEmails(Collection<String> emails) throws SQLException {
+        return measure(existsEmails, emails.size(), () -> super.existsByEmails(emails), Set::size);
+    }
+
+    @Override
+    public List<User> getAllUsers() throws SQLException {
+        return measure(getAll, null, super::getAllUsers, List::size);
+    }
+
+    /**
+     * La latencia mide la apertura del cursor; las filas se cuentan a medida que se recorren
+     */
+    @Override
+    public Stream<User> streamAllUsers() throws SQLException {
+        Stream<User> users = measure(streamAll, null, super::streamAllUsers, stream -> 0);
+        return users.peek(user -> streamAll.addRows(1));
+    }
+
+    @Override
+    public UserPage getUsersPage(int afterId, int limit, QueryCancellation cancellation) throws SQLException {
+        return measure(getPage, afterId, () -> super.getUsersPage(afterId, limit, cancellation),
+                page -> page.getUsers().size());
+    }
+
+    @Override
+    public List<User> getUsersModifiedSince(Instant since, int afterId, int limit) throws SQLException {
+        return measure(modifiedSince, since, () -> super.getUsersModifiedSince(since, afterId, limit), List::size);
+    }
+
+    @Override
+    public boolean updateUser(User user) throws SQLException {
+        return measure(update, user.getId(), () -> super.updateUser(user), updated -> updated ? 1 : 0);
+    }
+
+    @Override
+    public boolean deleteUser(int id) throws SQLException {
+        return measure(delete, id, () -> super.deleteUser(id), deleted -> deleted ? 1 : 0);
+    }
+
+    @Override
+    public List<User> findUsersByName(String name) throws SQLException {
+        return measure(find, name, () -> super.findUsersByName(name), List::size);
+    }
+
+    @Override
+    public UserPage findUsersByNamePage(String name, int afterId, int limit,
+                                        QueryCancellation cancellation) throws SQLException {
+        return measure(findPage, name, () -> super.findUsersByNamePage(name, afterId, limit, cancellation),
+                page -> page.getUsers().size());
+    }
+
+    @Override
+    public BatchResult createUsers(Collection<User> users) throws SQLException {
+        return measure(createBatch, users.size(), () -> super.createUsers(users), BatchResult::getSuccessCount);
+    }
+
+    @Override
+    public BatchResult updateUsers(Collection<User> users) throws SQLException {
+        return measure(updateBatch, users.size(), () -> super.updateUsers(users), BatchResult::getSuccessCount);
+    }
+
+    @Override
+    public BatchResult deleteUsers(int[] ids) throws SQLException {
+        return measure(deleteBatch, ids.length, () -> super.deleteUsers(ids), BatchResult::getSuccessCount);
+    }
+
+    @Override
+    public List<UserChange> getChangesAfter(long afterSequence, int limit) throws SQLException {
+        return measure(changes, afterSequence, () -> super.getChangesAfter(afterSequence, limit), List::size);
+    }
+
+    @Override
+    public long getLastChangeSequence() throws SQLException {
+        return measure(lastChange, null, super::getLastChangeSequence, sequence -> 1);
+    }
+
+    @Override
+    public int purgeChangesThrough(long sequence) throws SQLException {
+        return measure(purgeChanges, sequence, () -> super.purgeChangesThrough(sequence), Integer::longValue);
+    }
+
+    @Override
+    protected Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            ACQUIRE_NANOS.get()[0] += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    protected Connection getReadConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getReadConnection();
+        } finally {
+            ACQUIRE_NANOS.get()[0] += System.nanoTime() - start;
+        }
+    }
+
+    private <T> T measure(OperationMetrics operation, Object detail, SqlCall<T> call,
+                          ToLongFunction<T> rowCount) throws SQLException {
+        long[] acquired = ACQUIRE_NANOS.get();
+        long acquiredBefore = acquired[0];
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            long elapsed = System.nanoTime() - start;
+            long acquire = acquired[0] - acquiredBefore;
+            operation.record(elapsed, acquire, rowCount.applyAsLong(result));
+            metrics.checkSlow(operation, elapsed, acquire, detail);
+            return result;
+        } catch (SQLException e) {
+            operation.recordError(System.nanoTime() - start);
+            metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Detalle de una llamada lenta sin datos personales: el ID asignado al usuario
+     */
+    private static Object userDetail(User user) {
+        return new LazyDetail(() -> "id=" + user.getId());
+    }
+
+    /**
+     * Detalle de una llamada lenta sin datos personales: un hash del email, que permite
+     * reconocer las búsquedas repetidas sin escribir el email en el registro
+     */
+    private static Object emailDetail(String email) {
+        return new LazyDetail(() -> {
+            if (email == null) {
+                return "email=null";
+            }
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256")
+                        .digest(UserNameIndex.fold(email).getBytes(StandardCharsets.UTF_8));
+                StringBuilder hex = new StringBuilder("email#");
+                for (int i = 0; i < 6; i++) {
+                    hex.append(String.format("%02x", digest[i]));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                return "email#?";
+            }
+        });
+    }
+
+    /**
+     * Detalle que solo se calcula si la llamada resulta lenta y se registra
+     */
+    private static final class LazyDetail {
+        private final Supplier<String> text;
+
+        LazyDetail(Supplier<String> text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text.get();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+}
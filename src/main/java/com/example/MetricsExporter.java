@@ -0,0 +1,35 @@
+package com.example;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Destino al que se envían periódicamente las métricas de UserDAO
+ * (por ejemplo un sistema de monitorización); ver UserDAOMetrics.startExporter
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+    /**
+     * Publica el estado actual de las métricas
+     * @param operations métricas de cada operación
+     * @param errorsBySqlState número de errores por SQLState
+     */
+    void export(Collection<OperationMetrics> operations, Map<String, Long> errorsBySqlState);
+
+    /**
+     * @return un exportador que escribe las métricas por la salida estándar
+     */
+    static MetricsExporter console() {
+        return (operations, errors) -> {
+            for (OperationMetrics operation : operations) {
+                if (operation.getCount() > 0) {
+                    System.out.println(operation);
+                }
+            }
+            if (!errors.isEmpty()) {
+                System.out.println("Errores por SQLState: " + errors);
+            }
+        };
+    }
+}
@@ -0,0 +1,138 @@
+package com.example;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas acumuladas de una operación: latencia total, espera por la conexión,
+ * tiempo de consulta, filas devueltas o afectadas y errores
+ * Registrar una llamada no reserva memoria ni toma bloqueos
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+    private final LatencyHistogram executeLatency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registra una llamada terminada
+     * @param totalNanos duración total de la llamada
+     * @param acquireNanos parte de la duración dedicada a obtener conexiones
+     * @param rowCount filas devueltas o afectadas
+     */
+    void record(long totalNanos, long acquireNanos, long rowCount) {
+        latency.record(totalNanos);
+        acquireLatency.record(acquireNanos);
+        executeLatency.record(totalNanos - acquireNanos);
+        rows.add(rowCount);
+    }
+
+    /**
+     * Suma filas obtenidas después de terminar la llamada (por ejemplo al recorrer un stream)
+     */
+    void addRows(long rowCount) {
+        rows.add(rowCount);
+    }
+
+    /**
+     * Registra una llamada fallida; su duración cuenta en la latencia total
+     */
+    void recordError(long totalNanos) {
+        latency.record(totalNanos);
+        errors.increment();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return llamadas registradas, correctas o fallidas
+     */
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    public LatencyHistogram getExecuteLatency() {
+        return executeLatency;
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return latency.getMeanNanos() / 1000;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latency.getPercentileNanos(50) / 1000;
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latency.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getPercentileNanos(100) / 1000;
+    }
+
+    @Override
+    public long getAcquireP99Micros() {
+        return acquireLatency.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public long getExecuteP99Micros() {
+        return executeLatency.getPercentileNanos(99) / 1000;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        acquireLatency.reset();
+        executeLatency.reset();
+        errors.reset();
+        rows.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMetrics{" +
+                "name='" + name + '\'' +
+                ", count=" + getCount() +
+                ", errors=" + getErrorCount() +
+                ", rows=" + getRowCount() +
+                ", p50Micros=" + getP50Micros() +
+                ", p99Micros=" + getP99Micros() +
+                ", acquireP99Micros=" + getAcquireP99Micros() +
+                ", executeP99Micros=" + getExecuteP99Micros() +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package com.example;
+
+/**
+ * Vista JMX de las métricas de una operación de UserDAO
+ * Las latencias se expresan en microsegundos
+ */
+public interface OperationMetricsMXBean {
+
+    String getName();
+
+    long getCount();
+
+    long getErrorCount();
+
+    long getRowCount();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getMaxMicros();
+
+    /**
+     * @return percentil 99 del tiempo de espera por una conexión
+     */
+    long getAcquireP99Micros();
+
+    /**
+     * @return percentil 99 del tiempo de consulta, sin contar la espera por la conexión
+     */
+    long getExecuteP99Micros();
+
+    void reset();
+}
@@ -0,0 +1,37 @@
+package com.example;
+
+import java.sql.SQLException;
+
+/**
+ * Error de actualización: otro proceso modificó el usuario después de leerlo
+ * La versión leída ya no coincide con la de la base de datos; hay que volver a leer
+ * el usuario y repetir el cambio (ver UserDAO.updateWithRetry)
+ */
+public class OptimisticLockException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** SQLState de fallo de serialización, usado también por los bloqueos optimistas */
+    public static final String SQL_STATE = "40001";
+
+    private final int userId;
+    private final int expectedVersion;
+
+    public OptimisticLockException(int userId, int expectedVersion) {
+        super("User " + userId + " was modified concurrently (expected version " + expectedVersion + ")",
+                SQL_STATE);
+        this.userId = userId;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return versión con la que se intentó actualizar
+     */
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example;
+
+/**
+ * Instantánea inmutable de las estadísticas del pool de conexiones
+ */
+public class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiters;
+    private final int maxSize;
+    private final long borrowCount;
+    private final long timeoutCount;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long borrowP50Nanos;
+    private final long borrowP99Nanos;
+    private final long borrowMaxNanos;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final long statementCacheEvictions;
+    private final long statementPrepareNanos;
+
+    public PoolStats(int active, int idle, int total, int waiters, int maxSize,
+                     long borrowCount, long timeoutCount, long createdCount, long destroyedCount,
+                     LatencyHistogram borrowLatency,
+                     long statementCacheHits, long statementCacheMisses,
+                     long statementCacheEvictions, long statementPrepareNanos) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.waiters = waiters;
+        this.maxSize = maxSize;
+        this.borrowCount = borrowCount;
+        this.timeoutCount = timeoutCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.borrowP50Nanos = borrowLatency.getPercentileNanos(50);
+        this.borrowP99Nanos = borrowLatency.getPercentileNanos(99);
+        this.borrowMaxNanos = borrowLatency.getPercentileNanos(100);
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.statementCacheEvictions = statementCacheEvictions;
+        this.statementPrepareNanos = statementPrepareNanos;
+    }
+
+    // Getters
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    public long getBorrowP50Nanos() {
+        return borrowP50Nanos;
+    }
+
+    public long getBorrowP99Nanos() {
+        return borrowP99Nanos;
+    }
+
+    public long getBorrowMaxNanos() {
+        return borrowMaxNanos;
+    }
+
+    /**
+     * @return sentencias servidas desde la caché sin volver a prepararlas
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    /**
+     * @return sentencias que tuvieron que prepararse
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions;
+    }
+
+    /**
+     * @return tiempo total dedicado a preparar sentencias, en nanosegundos
+     */
+    public long getStatementPrepareNanos() {
+        return statementPrepareNanos;
+    }
+
+    /**
+     * Estima el tiempo ahorrado por la caché: aciertos por el coste medio de preparar
+     * @return nanosegundos de preparación evitados
+     */
+    public long getEstimatedPrepareNanosSaved() {
+        return statementCacheMisses == 0 ? 0 : statementCacheHits * (statementPrepareNanos / statementCacheMisses);
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "active=" + active +
+                ", idle=" + idle +
+                ", total=" + total +
+                ", waiters=" + waiters +
+                ", maxSize=" + maxSize +
+                ", borrowCount=" + borrowCount +
+                ", timeoutCount=" + timeoutCount +
+                ", createdCount=" + createdCount +
+                ", destroyedCount=" + destroyedCount +
+                ", borrowP50Nanos=" + borrowP50Nanos +
+                ", borrowP99Nanos=" + borrowP99Nanos +
+                ", borrowMaxNanos=" + borrowMaxNanos +
+                ", statementCacheHits=" + statementCacheHits +
+                ", statementCacheMisses=" + statementCacheMisses +
+                ", statementCacheEvictions=" + statementCacheEvictions +
+                ", estimatedPrepareNanosSaved=" + getEstimatedPrepareNanosSaved() +
+                '}';
+    }
+}
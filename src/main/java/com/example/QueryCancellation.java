@@ -0,0 +1,77 @@
+package com.example;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Permite cancelar desde otro hilo las consultas lanzadas con esta marca
+ * Mientras una consulta está en ejecución, cancel() llama a Statement.cancel() para que
+ * el servidor la aborte; las consultas que aún no han empezado fallan sin ejecutarse.
+ * Una marca puede cubrir varias consultas simultáneas, como las de cada shard de ShardedUserDAO
+ */
+public class QueryCancellation {
+
+    /** SQLState estándar de una consulta cancelada */
+    public static final String CANCELLED_SQL_STATE = "57014";
+
+    private final Set<Statement> running = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean cancelled;
+
+    /**
+     * Cancela la consulta en curso y todas las posteriores que usen esta marca
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                System.err.println("Error cancelando consulta: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registra la sentencia que se va a ejecutar
+     * @throws SQLException si la marca ya se canceló
+     */
+    synchronized void begin(Statement statement) throws SQLException {
+        if (cancelled) {
+            throw new SQLException("Query cancelled", CANCELLED_SQL_STATE);
+        }
+        running.add(statement);
+    }
+
+    /**
+     * Deja de asociar la sentencia; debe llamarse antes de cerrarla para que cancel()
+     * no alcance a otra consulta que reutilice la sentencia
+     */
+    synchronized void end(Statement statement) {
+        running.remove(statement);
+    }
+
+    /**
+     * @return true si la excepción se debe a una cancelación
+     */
+    public static boolean isCancellation(SQLException e) {
+        return CANCELLED_SQL_STATE.equals(e.getSQLState());
+    }
+
+    /**
+     * Traduce el error de una consulta abortada por cancel() al SQLState estándar, ya que
+     * cada driver informa la cancelación con su propio código
+     */
+    synchronized SQLException translate(SQLException e) {
+        if (!cancelled || isCancellation(e)) {
+            return e;
+        }
+        return new SQLException("Query cancelled", CANCELLED_SQL_STATE, e);
+    }
+}
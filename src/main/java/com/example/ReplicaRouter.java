@@ -0,0 +1,225 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reparte las conexiones entre el servidor principal y sus réplicas de lectura
+ * Las escrituras usan siempre el principal; las lecturas van a una réplica elegida por turno
+ * o por menor carga. Una réplica que no entrega conexiones se aparta durante unos segundos
+ * y, si ninguna responde, la lectura va al principal. Con readYourWritesMillis mayor que 0,
+ * un hilo que acaba de escribir lee del principal durante ese tiempo para ver sus cambios
+ * aunque las réplicas vayan con retraso
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+    /**
+     * Forma de elegir la réplica de cada lectura
+     */
+    public enum Strategy {
+        /** Cada lectura va a la réplica siguiente */
+        ROUND_ROBIN,
+        /** Cada lectura va a la réplica con menos conexiones prestadas y esperas */
+        LEAST_LOADED;
+
+        /**
+         * @param name "round-robin" o "least-loaded", sin distinguir mayúsculas
+         */
+        public static Strategy of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    // Tiempo durante el cual no se usa una réplica que falló al entregar una conexión
+    private static final long REPLICA_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final ConnectionPool primary;
+    private final List<ConnectionPool> replicas;
+    private final Strategy strategy;
+    private final long readYourWritesNanos;
+
+    private final AtomicInteger next = new AtomicInteger();
+    // Instante (System.nanoTime) hasta el que cada réplica queda apartada; 0 si está disponible
+    private final AtomicLongArray unavailableUntil;
+    private final LongAdder[] replicaReads;
+    private final LongAdder primaryReads = new LongAdder();
+    // Instante hasta el que el hilo lee del principal tras escribir
+    private final ThreadLocal<long[]> stickyUntil = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Crea el enrutado a partir de la configuración, abriendo un pool por servidor
+     */
+    public ReplicaRouter(DatabaseConfig config) {
+        this(config.createPrimaryPool(), config.createReplicaPools(),
+                config.getRouting(), config.getReadYourWritesMillis());
+    }
+
+    /**
+     * Crea un enrutado sin réplicas: lecturas y escrituras van al principal
+     * @param primary pool del servidor principal
+     */
+    public ReplicaRouter(ConnectionPool primary) {
+        this(primary, Collections.emptyList(), Strategy.ROUND_ROBIN, 0);
+    }
+
+    /**
+     * @param primary pool del servidor principal
+     * @param replicas pools de las réplicas; vacía para leer también del principal
+     * @param strategy forma de elegir la réplica de cada lectura
+     * @param readYourWritesMillis tiempo durante el cual un hilo lee del principal tras escribir; 0 lo desactiva
+     */
+    public ReplicaRouter(ConnectionPool primary, List<ConnectionPool> replicas,
+                         Strategy strategy, long readYourWritesMillis) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.strategy = strategy;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, readYourWritesMillis));
+        this.unavailableUntil = new AtomicLongArray(replicas.size());
+        this.replicaReads = new LongAdder[replicas.size()];
+        for (int i = 0; i < replicaReads.length; i++) {
+            replicaReads[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Obtiene una conexión del servidor principal, para escrituras y lecturas que deben ser actuales
+     * @throws SQLException si el pool no entrega la conexión
+     */
+    public Connection getConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    /**
+     * Obtiene una conexión para una lectura que admite datos con cierto retraso
+     * @return una conexión de réplica, o del principal si no hay réplicas disponibles
+     *         o el hilo escribió hace menos de readYourWritesMillis
+     * @throws SQLException si el principal tampoco entrega la conexión
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (replicas.isEmpty() || isSticky()) {
+            primaryReads.increment();
+            return primary.getConnection();
+        }
+
+        int first = strategy == Strategy.LEAST_LOADED
+                ? leastLoaded()
+                : Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            int replica = (first + i) % replicas.size();
+            long until = unavailableUntil.get(replica);
+            if (until != 0 && System.nanoTime() - until < 0) {
+                continue;
+            }
+            try {
+                Connection conn = replicas.get(replica).getConnection();
+                unavailableUntil.set(replica, 0);
+                replicaReads[replica].increment();
+                return conn;
+            } catch (SQLException e) {
+                System.err.println("Réplica " + replica + " no disponible: " + e.getMessage());
+                unavailableUntil.set(replica, System.nanoTime() + REPLICA_RETRY_NANOS);
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Anota que el hilo actual acaba de escribir: sus lecturas irán al principal
+     * durante readYourWritesMillis. No hace nada si la opción está desactivada
+     */
+    public void markWrite() {
+        if (readYourWritesNanos > 0 && !replicas.isEmpty()) {
+            stickyUntil.get()[0] = System.nanoTime() + readYourWritesNanos;
+        }
+    }
+
+    /**
+     * @return true si las lecturas del hilo actual van al principal por una escritura reciente
+     */
+    public boolean isSticky() {
+        long until = stickyUntil.get()[0];
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    /**
+     * Vuelve a leer de las réplicas en el hilo actual aunque haya escrito hace poco
+     */
+    public void clearSticky() {
+        stickyUntil.get()[0] = 0;
+    }
+
+    public ConnectionPool getPrimary() {
+        return primary;
+    }
+
+    public List<ConnectionPool> getReplicas() {
+        return replicas;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public long getReadYourWritesMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readYourWritesNanos);
+    }
+
+    /**
+     * @return lecturas servidas por el principal
+     */
+    public long getPrimaryReadCount() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * @param replica posición de la réplica en getReplicas()
+     * @return lecturas servidas por esa réplica
+     */
+    public long getReplicaReadCount(int replica) {
+        return replicaReads[replica].sum();
+    }
+
+    /**
+     * Cierra los pools del principal y de las réplicas
+     */
+    @Override
+    public void close() {
+        primary.close();
+        for (ConnectionPool replica : replicas) {
+            replica.close();
+        }
+    }
+
+    /**
+     * Elige la réplica disponible con menos carga; los empates se reparten por turno
+     */
+    private int leastLoaded() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        int best = start;
+        int bestLoad = Integer.MAX_VALUE;
+        long now = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            int replica = (start + i) % size;
+            long until = unavailableUntil.get(replica);
+            if (until != 0 && now - until < 0) {
+                continue;
+            }
+            int load = replicas.get(replica).getLoad();
+            if (load < bestLoad) {
+                best = replica;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,604 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * UserDAO repartido entre varias bases de datos (shards) por hash del ID de usuario
+ * Cada shard es un UserDAO con su propia conexión; los IDs son globales y los entrega un
+ * UserIdGenerator en lugar del AUTO_INCREMENT de cada shard. Las operaciones por ID van a un
+ * solo shard; getAllUsers, las búsquedas y las páginas consultan todos los shards en paralelo
+ * y mezclan los resultados por ID. Los lotes se escriben en una transacción por shard, no en
+ * una global, y la unicidad del email solo se comprueba dentro de cada shard
+ */
+public class ShardedUserDAO extends UserDAO implements AutoCloseable {
+
+    // Filas pedidas a cada shard por página al recorrer la tabla con streamAllUsers
+    private static final int STREAM_PAGE_SIZE = 1000;
+    // Hilos de consulta en paralelo por shard, para atender a varios llamadores a la vez
+    private static final int THREADS_PER_SHARD = 2;
+
+    private final List<UserDAO> shards;
+    private final UserIdGenerator idGenerator;
+    private final List<ReplicaRouter> ownedRouters;
+    private final ExecutorService executor;
+
+    /**
+     * Crea un DAO sobre los shards de la configuración (db.shards); la secuencia de IDs
+     * se guarda en el primer shard. close() cierra también sus pools
+     * @throws IllegalArgumentException si la configuración no tiene shards
+     */
+    public ShardedUserDAO(DatabaseConfig config) {
+        this(routers(config), config.getIdBlockSize());
+    }
+
+    private ShardedUserDAO(List<ReplicaRouter> routers, int idBlockSize) {
+        this(daos(routers), new UserIdGenerator(routers.get(0).getPrimary(), idBlockSize), routers);
+    }
+
+    /**
+     * Crea un DAO sobre shards ya construidos; el llamador es responsable de cerrar sus conexiones
+     * Los shards pasan a insertar los usuarios con el ID asignado por idGenerator
+     * @param shards un UserDAO por shard; el orden determina el reparto y no debe cambiar
+     * @param idGenerator generador de IDs globales
+     */
+    public ShardedUserDAO(List<UserDAO> shards, UserIdGenerator idGenerator) {
+        this(shards, idGenerator, Collections.emptyList());
+    }
+
+    private ShardedUserDAO(List<UserDAO> shards, UserIdGenerator idGenerator, List<ReplicaRouter> ownedRouters) {
+        super(null);
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.idGenerator = idGenerator;
+        this.ownedRouters = ownedRouters;
+        for (UserDAO shard : this.shards) {
+            shard.useExplicitIds();
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shards.size() * THREADS_PER_SHARD, r -> {
+            Thread thread = new Thread(r, "user-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Calcula el shard de un ID con hash consistente (jump consistent hash): al pasar de
+     * N a N+1 shards solo cambia de shard 1/(N+1) de los usuarios, y todos van al nuevo
+     * @param id el ID del usuario
+     * @param shardCount número de shards, mayor que 0
+     * @return posición del shard, entre 0 y shardCount - 1
+     */
+    public static int shardFor(int id, int shardCount) {
+        // Mezcla de bits (MurmurHash3 fmix64) para que IDs consecutivos no sigan un patrón
+        long key = id;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        long bucket = -1;
+        long next = 0;
+        while (next < shardCount) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    /**
+     * @return el shard que guarda el usuario con ese ID
+     */
+    public UserDAO shardFor(int id) {
+        return shards.get(shardFor(id, shards.size()));
+    }
+
+    public List<UserDAO> getShards() {
+        return shards;
+    }
+
+    /**
+     * Las consultas que recorren todos los shards usan una conexión de cada uno,
+     * así que el límite es el del shard con el pool más pequeño
+     */
+    @Override
+    public int getPoolMaxSize() {
+        int min = Integer.MAX_VALUE;
+        for (UserDAO shard : shards) {
+            min = Math.min(min, shard.getPoolMaxSize());
+        }
+        return min;
+    }
+
+    public UserIdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Asigna un ID global al usuario y lo crea en su shard
+     */
+    @Override
+    public User createUser(User user) throws SQLException {
+        user.setId(idGenerator.nextId());
+        return shardFor(user.getId()).createUser(user);
+    }
+
+    @Override
+    public User getUserById(int id) throws SQLException {
+        return shardFor(id).getUserById(id);
+    }
+
+    /**
+     * Agrupa los IDs por shard y consulta los shards implicados en paralelo
+     */
+    @Override
+    public Map<Integer, User> getUsersByIds(Collection<Integer> ids) throws SQLException {
+        Map<UserDAO, List<Integer>> idsByShard = new IdentityHashMap<>();
+        for (Integer id : ids) {
+            if (id != null) {
+                idsByShard.computeIfAbsent(shardFor(id), shard -> new ArrayList<>()).add(id);
+            }
+        }
+        Map<Integer, User> users = new HashMap<>();
+        List<Map<Integer, User>> found = fanOut(idsByShard.keySet(),
+                shard -> shard.getUsersByIds(idsByShard.get(shard)));
+        for (Map<Integer, User> shardUsers : found) {
+            users.putAll(shardUsers);
+        }
+        return users;
+    }
+
+    /**
+     * @return todos los usuarios ordenados por ID
+     */
+    @Override
+    public List<User> getAllUsers() throws SQLException {
+        try (Stream<User> users = streamAllUsers()) {
+            return users.collect(Collectors.toList());
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Recorre todos los usuarios ordenados por ID mezclando las páginas de cada shard
+     * Cada shard se lee por páginas de STREAM_PAGE_SIZE filas y la siguiente página se pide
+     * en paralelo mientras se consume la actual, así que la memoria usada es de unas dos
+     * páginas por shard y no se retiene ninguna conexión entre páginas
+     */
+    @Override
+    public Stream<User> streamAllUsers() throws SQLException {
+        PriorityQueue<ShardCursor> heads = new PriorityQueue<>(
+                Comparator.comparingInt(cursor -> cursor.current.getId()));
+        List<ShardCursor> cursors = new ArrayList<>(shards.size());
+        for (UserDAO shard : shards) {
+            cursors.add(new ShardCursor(shard));
+        }
+        try {
+            for (ShardCursor cursor : cursors) {
+                if (cursor.advance()) {
+                    heads.add(cursor);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            cursors.forEach(ShardCursor::cancel);
+            throw e;
+        }
+
+        Spliterator<User> spliterator = new Spliterators.AbstractSpliterator<User>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super User> action) {
+                ShardCursor cursor = heads.poll();
+                if (cursor == null) {
+                    return false;
+                }
+                action.accept(cursor.current);
+                try {
+                    if (cursor.advance()) {
+                        heads.add(cursor);
+                    }
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> cursors.forEach(ShardCursor::cancel));
+    }
+
+    /**
+     * Pide la página a todos los shards en paralelo y se queda con los limit primeros IDs
+     * La marca de cancelación detiene las consultas de todos los shards
+     */
+    @Override
+    public UserPage getUsersPage(int afterId, int limit, QueryCancellation cancellation) throws SQLException {
+        return mergePages(fanOut(shards, shard -> shard.getUsersPage(afterId, limit, cancellation)), afterId, limit);
+    }
+
+    /**
+     * Pide los cambios a todos los shards en paralelo y se queda con los limit primeros por
+     * updated_at e ID; cada shard ya devuelve sus limit primeros en ese orden
+     */
+    @Override
+    public List<User> getUsersModifiedSince(Instant since, int afterId, int limit) throws SQLException {
+        List<User> users = new ArrayList<>();
+        for (List<User> modified : fanOut(shards, shard -> shard.getUsersModifiedSince(since, afterId, limit))) {
+            users.addAll(modified);
+        }
+        users.sort(Comparator.comparing(User::getUpdatedAt).thenComparingInt(User::getId));
+        return users.size() > limit ? new ArrayList<>(users.subList(0, limit)) : users;
+    }
+
+    @Override
+    public boolean updateUser(User user) throws SQLException {
+        return shardFor(user.getId()).updateUser(user);
+    }
+
+    @Override
+    public User updateWithRetry(int id, Consumer<User> change, int maxAttempts) throws SQLException {
+        return shardFor(id).updateWithRetry(id, change, maxAttempts);
+    }
+
+    @Override
+    public boolean deleteUser(int id) throws SQLException {
+        return shardFor(id).deleteUser(id);
+    }
+
+    /**
+     * El email no determina el shard, así que se consulta en todos en paralelo
+     * @return el usuario con ese email de menor ID, o null si no existe en ningún shard
+     */
+    @Override
+    public User getUserByEmail(String email) throws SQLException {
+        User user = null;
+        for (User found : fanOut(shards, shard -> shard.getUserByEmail(email))) {
+            if (found != null && (user == null || found.getId() < user.getId())) {
+                user = found;
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Comprueba los emails en todos los shards en paralelo; cada shard aplica su propio filtro de emails
+     */
+    @Override
+    public Set<String> existsByEmails(Collection<String> emails) throws SQLException {
+        Set<String> registered = new HashSet<>();
+        for (Set<String> found : fanOut(shards, shard -> shard.existsByEmails(emails))) {
+            registered.addAll(found);
+        }
+        return registered;
+    }
+
+    /**
+     * Busca en todos los shards en paralelo
+     * @return los usuarios coincidentes ordenados por ID
+     */
+    @Override
+    public List<User> findUsersByName(String name) throws SQLException {
+        List<User> users = new ArrayList<>();
+        for (List<User> found : fanOut(shards, shard -> shard.findUsersByName(name))) {
+            users.addAll(found);
+        }
+        users.sort(Comparator.comparingInt(User::getId));
+        return users;
+    }
+
+    @Override
+    public UserPage findUsersByNamePage(String name, int afterId, int limit,
+                                        QueryCancellation cancellation) throws SQLException {
+        return mergePages(fanOut(shards, shard -> shard.findUsersByNamePage(name, afterId, limit, cancellation)),
+                afterId, limit);
+    }
+
+    /**
+     * Construye el índice de nombres de cada shard en paralelo; cada shard lo usa y lo
+     * mantiene en sus propias búsquedas
+     * @return null, ya que no hay un índice común a todos los shards
+     */
+    @Override
+    public UserNameIndex buildNameIndex() throws SQLException {
+        fanOut(shards, UserDAO::buildNameIndex);
+        return null;
+    }
+
+    /**
+     * Construye el filtro de emails de cada shard en paralelo
+     * @return null, ya que cada shard descarta con su propio filtro
+     */
+    @Override
+    public EmailBloomFilter buildEmailFilter(double falsePositiveRate) throws SQLException {
+        fanOut(shards, shard -> shard.buildEmailFilter(falsePositiveRate));
+        return null;
+    }
+
+    /**
+     * Activa el registro de cambios en cada shard; cada shard guarda su propio registro en
+     * orden, así que se lee con un UserChangeConsumer por shard (ver getShards())
+     */
+    @Override
+    public void setChangeFeedEnabled(boolean enabled) {
+        super.setChangeFeedEnabled(enabled);
+        for (UserDAO shard : shards) {
+            shard.setChangeFeedEnabled(enabled);
+        }
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        super.setBatchSize(batchSize);
+        for (UserDAO shard : shards) {
+            shard.setBatchSize(batchSize);
+        }
+    }
+
+    /**
+     * Asigna IDs globales y crea los usuarios de cada shard en un lote por shard, en paralelo
+     */
+    @Override
+    public BatchResult createUsers(Collection<User> users) throws SQLException {
+        List<User> items = new ArrayList<>(users);
+        for (User user : items) {
+            user.setId(idGenerator.nextId());
+        }
+        return executeByShard(items, User::getId, UserDAO::createUsers);
+    }
+
+    @Override
+    public BatchResult updateUsers(Collection<User> users) throws SQLException {
+        return executeByShard(new ArrayList<>(users), User::getId, UserDAO::updateUsers);
+    }
+
+    @Override
+    public BatchResult deleteUsers(int[] ids) throws SQLException {
+        List<Integer> items = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            items.add(id);
+        }
+        return executeByShard(items, Integer::intValue,
+                (shard, shardIds) -> shard.deleteUsers(shardIds.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Las operaciones se resuelven en los shards; no hay una conexión común
+     */
+    @Override
+    protected Connection getConnection() throws SQLException {
+        throw new SQLException("ShardedUserDAO has no single database; use getShards()");
+    }
+
+    @Override
+    protected Connection getReadConnection() throws SQLException {
+        return getConnection();
+    }
+
+    /**
+     * Detiene los hilos de consulta en paralelo y cierra los pools creados desde la configuración
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (ReplicaRouter router : ownedRouters) {
+            router.close();
+        }
+    }
+
+    /**
+     * Ejecuta la llamada en cada shard en paralelo y espera a todas
+     * @return los resultados en el orden de los shards recibidos
+     * @throws SQLException el primer error de algún shard; los demás se añaden como suprimidos
+     */
+    private <T> List<T> fanOut(Collection<UserDAO> targets, ShardCall<T> call) throws SQLException {
+        List<CompletableFuture<T>> futures = new ArrayList<>(targets.size());
+        for (UserDAO shard : targets) {
+            futures.add(submit(() -> call.call(shard)));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        SQLException error = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(await(future));
+            } catch (SQLException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    /**
+     * Reparte los elementos por shard, ejecuta un lote por shard en paralelo y recompone
+     * el resultado con las posiciones de la colección original
+     */
+    private <T> BatchResult executeByShard(List<T> items, ToIntFunction<T> idOf,
+                                           ShardBatch<T> batch) throws SQLException {
+        Map<UserDAO, List<Integer>> positionsByShard = new IdentityHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            UserDAO shard = shardFor(idOf.applyAsInt(items.get(i)));
+            positionsByShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(i);
+        }
+        List<UserDAO> targets = new ArrayList<>(positionsByShard.keySet());
+        List<BatchResult> results = fanOut(targets, shard -> {
+            List<T> shardItems = new ArrayList<>();
+            for (int position : positionsByShard.get(shard)) {
+                shardItems.add(items.get(position));
+            }
+            return batch.execute(shard, shardItems);
+        });
+
+        BatchResult result = new BatchResult(items.size());
+        for (int i = 0; i < targets.size(); i++) {
+            List<Integer> positions = positionsByShard.get(targets.get(i));
+            BatchResult shardResult = results.get(i);
+            for (int j = 0; j < positions.size(); j++) {
+                result.setRowCount(positions.get(j), shardResult.getRowCount(j));
+            }
+            for (BatchResult.Failure failure : shardResult.getFailures()) {
+                result.addFailure(positions.get(failure.getIndex()), failure.getError());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mezcla las páginas de los shards: como cada una tiene los primeros IDs de su shard
+     * tras afterId, los limit primeros IDs de la unión son los de la página global
+     */
+    private static UserPage mergePages(List<UserPage> pages, int afterId, int limit) {
+        List<User> users = new ArrayList<>();
+        boolean hasMore = false;
+        for (UserPage page : pages) {
+            users.addAll(page.getUsers());
+            hasMore |= page.hasMore();
+        }
+        users.sort(Comparator.comparingInt(User::getId));
+        if (users.size() > limit) {
+            users = new ArrayList<>(users.subList(0, limit));
+            hasMore = true;
+        }
+        int nextCursor = users.isEmpty() ? afterId : users.get(users.size() - 1).getId();
+        return new UserPage(users, nextCursor, hasMore);
+    }
+
+    private <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        }, executor);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedSQLException) {
+                throw ((UncheckedSQLException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static List<ReplicaRouter> routers(DatabaseConfig config) {
+        if (config.getShardUrls().isEmpty()) {
+            throw new IllegalArgumentException("No shards configured (db.shards)");
+        }
+        List<ReplicaRouter> routers = new ArrayList<>();
+        for (ConnectionPool pool : config.createShardPools()) {
+            routers.add(new ReplicaRouter(pool));
+        }
+        return routers;
+    }
+
+    private static List<UserDAO> daos(List<ReplicaRouter> routers) {
+        List<UserDAO> daos = new ArrayList<>(routers.size());
+        for (ReplicaRouter router : routers) {
+            daos.add(new UserDAO(null, router));
+        }
+        return daos;
+    }
+
+    /**
+     * Recorre un shard por páginas, pidiendo la siguiente mientras se consume la actual
+     */
+    private final class ShardCursor {
+        private final UserDAO shard;
+        private CompletableFuture<UserPage> nextPage;
+        private List<User> users = Collections.emptyList();
+        private int position;
+        private User current;
+
+        ShardCursor(UserDAO shard) {
+            this.shard = shard;
+            this.nextPage = fetch(UserPage.FIRST_PAGE);
+        }
+
+        /**
+         * Pasa al siguiente usuario del shard
+         * @return false si el shard no tiene más usuarios
+         */
+        boolean advance() throws SQLException {
+            while (position == users.size()) {
+                if (nextPage == null) {
+                    current = null;
+                    return false;
+                }
+                UserPage page = await(nextPage);
+                users = page.getUsers();
+                position = 0;
+                nextPage = page.hasMore() ? fetch(page.getNextCursor()) : null;
+            }
+            current = users.get(position++);
+            return true;
+        }
+
+        void cancel() {
+            if (nextPage != null) {
+                nextPage.cancel(false);
+                nextPage = null;
+            }
+        }
+
+        private CompletableFuture<UserPage> fetch(int afterId) {
+            return submit(() -> shard.getUsersPage(afterId, STREAM_PAGE_SIZE));
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(UserDAO shard) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ShardBatch<T> {
+        BatchResult execute(UserDAO shard, List<T> items) throws SQLException;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de sentencias preparadas de una conexión física del pool
+ * Cerrar una sentencia obtenida de la caché la deja lista para reutilizarse en lugar de
+ * liberarla, de modo que cada SQL se prepara (y el servidor la analiza) una sola vez por conexión.
+ * Al devolverla se cierra su resultado abierto y se restablecen las propiedades que el llamador
+ * pudo cambiar (fetchSize, maxRows, queryTimeout...); si no se puede, la sentencia se descarta.
+ * Solo la usa el hilo que tiene prestada la conexión, por lo que no necesita sincronización
+ */
+final class StatementCache {
+
+    private final Connection physical;
+    private final Counters counters;
+    private final LinkedHashMap<Key, CacheEntry> entries;
+
+    StatementCache(Connection physical, int maxSize, Counters counters) {
+        this.physical = physical;
+        this.counters = counters;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                counters.evictions.increment();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Devuelve una sentencia preparada para el SQL, reutilizando la de la caché si está libre
+     * @param owner la conexión prestada que devolverá getConnection() de la sentencia
+     * @param sql la sentencia SQL
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS o Statement.NO_GENERATED_KEYS
+     * @return una sentencia cuyo close() la devuelve a la caché
+     */
+    PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        CacheEntry entry = entries.get(key);
+        if (entry != null && entry.evicted) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry != null && !entry.inUse) {
+            counters.hits.increment();
+            return entry.checkout(owner);
+        }
+
+        long start = System.nanoTime();
+        PreparedStatement statement = autoGeneratedKeys == Statement.NO_GENERATED_KEYS
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        counters.prepareNanos.add(System.nanoTime() - start);
+        counters.misses.increment();
+
+        if (entry != null) {
+            // La misma SQL ya está abierta en esta conexión: se usa una sentencia sin caché
+            return statement;
+        }
+        try {
+            entry = new CacheEntry(statement);
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        entries.put(key, entry);
+        return entry.checkout(owner);
+    }
+
+    /**
+     * Cierra las sentencias que no se devolvieron antes de liberar la conexión
+     */
+    void releaseLeaked() {
+        Iterator<CacheEntry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry entry = it.next();
+            if (entry.inUse) {
+                it.remove();
+                entry.closePhysical();
+            }
+        }
+    }
+
+    /**
+     * Cierra todas las sentencias de la caché
+     */
+    void closeAll() {
+        List<CacheEntry> all = new ArrayList<>(entries.values());
+        entries.clear();
+        for (CacheEntry entry : all) {
+            entry.closePhysical();
+        }
+    }
+
+    /**
+     * Contadores compartidos por todas las conexiones del pool
+     */
+    static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder prepareNanos = new LongAdder();
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        // Valores de la sentencia recién preparada, que se restauran al devolverla
+        private final int fetchSize;
+        private final int fetchDirection;
+        private final int maxRows;
+        private final int maxFieldSize;
+        private final int queryTimeout;
+        private final boolean poolable;
+
+        CacheEntry(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.fetchDirection = statement.getFetchDirection();
+            this.maxRows = statement.getMaxRows();
+            this.maxFieldSize = statement.getMaxFieldSize();
+            this.queryTimeout = statement.getQueryTimeout();
+            this.poolable = statement.isPoolable();
+        }
+
+        PreparedStatement checkout(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class},
+                    new Checkout(this, owner));
+        }
+
+        void checkin() {
+            inUse = false;
+            if (!evicted) {
+                try {
+                    if (reset()) {
+                        return;
+                    }
+                } catch (SQLException e) {
+                    // Se descarta abajo
+                }
+                evicted = true;
+            }
+            closePhysical();
+        }
+
+        /**
+         * Deja la sentencia como recién preparada, como haría close() con su resultado abierto
+         * @return false si la sentencia no puede reutilizarse
+         */
+        private boolean reset() throws SQLException {
+            if (statement.isClosed() || statement.isCloseOnCompletion()) {
+                return false;
+            }
+            ResultSet open = statement.getResultSet();
+            if (open != null) {
+                open.close();
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            // maxRows antes que fetchSize: algunos drivers no admiten un fetchSize mayor que maxRows
+            if (statement.getMaxRows() != maxRows) {
+                statement.setMaxRows(maxRows);
+            }
+            if (statement.getFetchSize() != fetchSize) {
+                statement.setFetchSize(fetchSize);
+            }
+            if (statement.getFetchDirection() != fetchDirection) {
+                statement.setFetchDirection(fetchDirection);
+            }
+            if (statement.getMaxFieldSize() != maxFieldSize) {
+                statement.setMaxFieldSize(maxFieldSize);
+            }
+            if (statement.getQueryTimeout() != queryTimeout) {
+                statement.setQueryTimeout(queryTimeout);
+            }
+            if (statement.isPoolable() != poolable) {
+                statement.setPoolable(poolable);
+            }
+            return true;
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closePhysical();
+            }
+        }
+
+        void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("Error cerrando sentencia: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Uso de una sentencia de la caché: close() la devuelve y cualquier uso posterior falla
+     */
+    private static final class Checkout implements InvocationHandler {
+        private final CacheEntry entry;
+        private final Connection owner;
+        private boolean closed;
+
+        Checkout(CacheEntry entry, Connection owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        entry.checkin();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
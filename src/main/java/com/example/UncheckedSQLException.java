@@ -0,0 +1,21 @@
+package com.example;
+
+import java.sql.SQLException;
+
+/**
+ * Envuelve una SQLException en contextos que no admiten excepciones comprobadas,
+ * como la iteración de un Stream
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -1,13 +1,20 @@
 package com.example;
 
+import java.time.Instant;
+
 /**
  * Clase modelo de Usuario que representa una entidad usuario
  */
 public class User {
+    /** Versión de un usuario cuya versión se desconoce: su actualización no se comprueba */
+    public static final int UNVERSIONED = -1;
+    
     private int id;
     private String name;
     private String email;
     private int age;
+    private int version = UNVERSIONED;
+    private Instant updatedAt;
     
     // Constructor por defecto
     public User() {}
@@ -27,6 +34,16 @@ public class User {
         this.age = age;
     }
     
+    // Constructor de copia
+    public User(User other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.email = other.email;
+        this.age = other.age;
+        this.version = other.version;
+        this.updatedAt = other.updatedAt;
+    }
+    
     // Getters y Setters
     public int getId() {
         return id;
@@ -60,6 +77,30 @@ public class User {
         this.age = age;
     }
     
+    /**
+     * @return versión de la fila leída, usada para detectar modificaciones concurrentes,
+     *         o UNVERSIONED si se desconoce
+     */
+    public int getVersion() {
+        return version;
+    }
+    
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    
+    /**
+     * @return momento de la última modificación de la fila cuando se leyó, o null si el
+     *         usuario no se ha leído de la base de datos
+     */
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
     @Override
     public String toString() {
         return "User{" +
@@ -67,6 +108,8 @@ public class User {
                 ", name='" + name + '\'' +
                 ", email='" + email + '\'' +
                 ", age=" + age +
+                ", version=" + version +
+                ", updatedAt=" + updatedAt +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package com.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caché en memoria de usuarios por ID, acotada con expulsión LRU y tiempo de vida (TTL)
+ * Guarda y devuelve copias, de modo que modificar un usuario obtenido no altera la caché
+ */
+public class UserCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<Integer, CacheEntry> entries;
+
+    // Se incrementa en cada invalidación para descartar lecturas que la precedieron
+    private long invalidations;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    /**
+     * Crea una caché de usuarios
+     * @param maxSize número máximo de usuarios guardados
+     * @param ttlMillis tiempo de vida de cada entrada en milisegundos
+     */
+    public UserCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        // accessOrder = true: el orden de iteración va del menos al más usado recientemente
+        this.entries = new LinkedHashMap<Integer, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+                if (size() > UserCache.this.maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Busca un usuario en la caché
+     * @param id el ID del usuario
+     * @return una copia del usuario, o null si no está o ha expirado
+     */
+    public synchronized User get(int id) {
+        CacheEntry entry = entries.get(id);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (System.nanoTime() - entry.loadedAt > ttlNanos) {
+            entries.remove(id);
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return new User(entry.user);
+    }
+
+    /**
+     * Guarda o reemplaza un usuario tras escribirlo en la base de datos
+     * Cuenta como invalidación para descartar lecturas en curso del valor anterior
+     * @param user el usuario a guardar
+     */
+    public synchronized void put(User user) {
+        invalidations++;
+        store(user);
+    }
+
+    /**
+     * Marca el inicio de una lectura de la base de datos para usar con putIfFresh
+     * @return marca de invalidaciones actual
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Guarda un usuario leído de la base de datos salvo que alguna invalidación
+     * haya ocurrido desde la marca, en cuyo caso la lectura podría estar obsoleta
+     * @param user el usuario leído
+     * @param stamp marca obtenida con stamp() antes de la lectura
+     */
+    public synchronized void putIfFresh(User user, long stamp) {
+        if (stamp == invalidations) {
+            store(user);
+        }
+    }
+
+    /**
+     * Elimina un usuario de la caché
+     * @param id el ID del usuario
+     */
+    public synchronized void invalidate(int id) {
+        entries.remove(id);
+        invalidations++;
+    }
+
+    /**
+     * Vacía la caché
+     */
+    public synchronized void clear() {
+        entries.clear();
+        invalidations++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * @return proporción de aciertos entre 0 y 1, 0 si aún no hubo consultas
+     */
+    public synchronized double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UserCache{" +
+                "size=" + entries.size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                ", expirations=" + expirationCount +
+                '}';
+    }
+
+    private void store(User user) {
+        entries.put(user.getId(), new CacheEntry(new User(user), System.nanoTime()));
+    }
+
+    private static final class CacheEntry {
+        private final User user;
+        private final long loadedAt;
+
+        CacheEntry(User user, long loadedAt) {
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
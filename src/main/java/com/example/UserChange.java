@@ -0,0 +1,92 @@
+package com.example;
+
+import java.time.Instant;
+
+/**
+ * Cambio de un usuario registrado en la tabla user_changes
+ * Las altas y modificaciones guardan el estado del usuario tras el cambio; las bajas solo el ID
+ */
+public class UserChange {
+
+    /**
+     * Tipo de cambio, guardado en la columna change_type con una letra
+     */
+    public enum Type {
+        CREATE('C'),
+        UPDATE('U'),
+        DELETE('D');
+
+        private final char code;
+
+        Type(char code) {
+            this.code = code;
+        }
+
+        public char getCode() {
+            return code;
+        }
+
+        /**
+         * @throws IllegalArgumentException si la letra no corresponde a ningún tipo
+         */
+        public static Type of(char code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown change type: " + code);
+        }
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final int userId;
+    private final User user;
+    private final Instant changedAt;
+
+    public UserChange(long sequence, Type type, int userId, User user, Instant changedAt) {
+        this.sequence = sequence;
+        this.type = type;
+        this.userId = userId;
+        this.user = user;
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * @return posición del cambio en el registro; crece con cada cambio confirmado
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return el usuario tras el cambio, o null si es una baja
+     */
+    public User getUser() {
+        return user;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "UserChange{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", userId=" + userId +
+                ", user=" + user +
+                ", changedAt=" + changedAt +
+                '}';
+    }
+}
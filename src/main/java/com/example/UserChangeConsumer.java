@@ -0,0 +1,334 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumidor del registro de cambios de usuarios (tabla user_changes)
+ * Entrega los cambios en orden de secuencia, en lotes de hasta batchSize, y guarda su
+ * posición con su nombre en user_change_offsets después de que el manejador termine sin
+ * error; un consumidor con el mismo nombre continúa donde se quedó. Si el manejador falla
+ * el lote se repite en la siguiente lectura.
+ * Las secuencias se asignan al insertar y no al confirmar, por lo que una transacción lenta
+ * puede dejar un hueco temporal: la entrega se detiene en el hueco hasta que aparece la
+ * secuencia que falta o pasa gapTimeoutMillis, y entonces continúa sin ella. Las secuencias
+ * saltadas se siguen buscando durante lateChangeWindowMillis y, si aparecen (la transacción
+ * era lenta, no deshecha), se entregan en un lote aparte, fuera de orden respecto a los
+ * cambios posteriores; no afectan a los mismos usuarios, cuyas filas estaban bloqueadas por
+ * esa transacción. Así cada cambio se entrega al menos una vez salvo si su transacción dura
+ * más que lateChangeWindowMillis o el proceso se reinicia mientras se espera: las
+ * secuencias saltadas solo se recuerdan en memoria
+ */
+public class UserChangeConsumer implements AutoCloseable {
+
+    /**
+     * Tiempo por defecto que se detiene la entrega ante una secuencia que falta; cubre las
+     * transacciones habituales sin retrasar mucho a los consumidores cuando fue deshecha
+     */
+    public static final long DEFAULT_GAP_TIMEOUT_MILLIS = 5000;
+    /** Tiempo por defecto durante el que se sigue buscando una secuencia saltada */
+    public static final long DEFAULT_LATE_CHANGE_WINDOW_MILLIS = 10 * 60 * 1000;
+
+    // Secuencias que falten seguidas a partir de las cuales el hueco no se vuelve a buscar
+    private static final int MAX_TRACKED_GAP = 10000;
+
+    private final UserDAO userDAO;
+    private final String name;
+    private final int batchSize;
+    private final BatchHandler handler;
+    private long gapTimeoutMillis = DEFAULT_GAP_TIMEOUT_MILLIS;
+    private long lateChangeWindowMillis = DEFAULT_LATE_CHANGE_WINDOW_MILLIS;
+
+    // Última secuencia procesada; -1 hasta leerla de user_change_offsets
+    private long offset = -1;
+    // Primera secuencia que falta tras la posición actual y desde cuándo se espera
+    private long gapSequence;
+    private long gapSinceNanos;
+    // Secuencias saltadas que aún pueden aparecer, con el instante (nanoTime) en que se abandonan
+    private final TreeMap<Long, Long> skipped = new TreeMap<>();
+    private long nextLateCheckNanos;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param userDAO DAO cuya base de datos guarda el registro de cambios
+     * @param name nombre del consumidor, con el que se guarda su posición
+     * @param batchSize número máximo de cambios por lote
+     * @param handler recibe cada lote de cambios
+     */
+    public UserChangeConsumer(UserDAO userDAO, String name, int batchSize, BatchHandler handler) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.userDAO = userDAO;
+        this.name = name;
+        this.batchSize = batchSize;
+        this.handler = handler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void setGapTimeoutMillis(long gapTimeoutMillis) {
+        this.gapTimeoutMillis = gapTimeoutMillis;
+    }
+
+    public synchronized void setLateChangeWindowMillis(long lateChangeWindowMillis) {
+        this.lateChangeWindowMillis = lateChangeWindowMillis;
+    }
+
+    /**
+     * @return número de secuencias saltadas que aún se buscan
+     */
+    public synchronized int getPendingGapCount() {
+        return skipped.size();
+    }
+
+    /**
+     * @return última secuencia procesada, o 0 si el consumidor aún no ha procesado nada
+     * @throws SQLException si la posición guardada no se puede leer
+     */
+    public synchronized long getOffset() throws SQLException {
+        if (offset < 0) {
+            offset = loadOffset();
+        }
+        return offset;
+    }
+
+    /**
+     * Mueve la posición del consumidor, por ejemplo para reprocesar cambios
+     * @param sequence última secuencia que se da por procesada
+     * @throws SQLException si la posición no se puede guardar
+     */
+    public synchronized void seek(long sequence) throws SQLException {
+        storeOffset(sequence);
+        offset = sequence;
+        gapSequence = 0;
+        skipped.clear();
+    }
+
+    /**
+     * Lee y entrega como mucho un lote de cambios
+     * @return número de cambios entregados; 0 si no hay cambios nuevos o se espera un hueco
+     * @throws SQLException si la lectura falla, si el manejador falla (el lote se repetirá)
+     *                      o si la posición no se puede guardar
+     */
+    public synchronized int poll() throws SQLException {
+        int late = pollLateChanges();
+        if (late > 0) {
+            return late;
+        }
+        long from = getOffset();
+        List<UserChange> changes = userDAO.getChangesAfter(from, batchSize);
+        int count = contiguousCount(from, changes);
+        if (count == 0) {
+            return 0;
+        }
+
+        List<UserChange> batch = changes.subList(0, count);
+        handle(batch);
+
+        long last = batch.get(count - 1).getSequence();
+        storeOffset(last);
+        offset = last;
+        return count;
+    }
+
+    /**
+     * Entrega cambios cada intervalMillis en un hilo de fondo hasta llamar a stop()
+     * Los errores se registran y el lote se reintenta en la siguiente ejecución
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Consumer already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "user-changes-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::drain, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detiene el hilo de fondo y espera a que termine el lote en curso
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private void drain() {
+        try {
+            while (poll() > 0) {
+                // Seguir mientras haya cambios pendientes
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error procesando cambios (" + name + "): " + e.getMessage());
+        }
+    }
+
+    private void handle(List<UserChange> batch) throws SQLException {
+        try {
+            handler.handle(batch);
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Change handler failed at sequence " + batch.get(0).getSequence(), e);
+        }
+    }
+
+    /**
+     * Busca las secuencias saltadas, como mucho una vez cada gapTimeoutMillis, y entrega las
+     * que hayan aparecido; cada tramo de secuencias consecutivas se lee con una consulta
+     * @return número de cambios tardíos entregados
+     */
+    private int pollLateChanges() throws SQLException {
+        long now = System.nanoTime();
+        if (skipped.isEmpty() || now - nextLateCheckNanos < 0) {
+            return 0;
+        }
+        nextLateCheckNanos = now + TimeUnit.MILLISECONDS.toNanos(gapTimeoutMillis);
+
+        for (Iterator<Map.Entry<Long, Long>> it = skipped.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> entry = it.next();
+            if (now - entry.getValue() >= 0) {
+                System.err.println("Consumidor " + name + ": se abandona la secuencia " + entry.getKey());
+                it.remove();
+            }
+        }
+
+        List<UserChange> late = new ArrayList<>();
+        Long first = skipped.isEmpty() ? null : skipped.firstKey();
+        while (first != null && late.size() < batchSize) {
+            long last = first;
+            while (skipped.containsKey(last + 1)) {
+                last++;
+            }
+            int limit = (int) Math.min(last - first + 1, batchSize - late.size());
+            for (UserChange change : userDAO.getChangesAfter(first - 1, limit)) {
+                if (change.getSequence() <= last) {
+                    late.add(change);
+                }
+            }
+            first = skipped.higherKey(last);
+        }
+        if (late.isEmpty()) {
+            return 0;
+        }
+
+        handle(late);
+        for (UserChange change : late) {
+            skipped.remove(change.getSequence());
+        }
+        return late.size();
+    }
+
+    /**
+     * Cuenta los cambios que pueden entregarse sin saltar ninguna secuencia
+     * El primer cambio de un consumidor nuevo se acepta sin comprobar huecos, ya que el
+     * registro puede haberse purgado
+     */
+    private int contiguousCount(long from, List<UserChange> changes) {
+        long expected = from + 1;
+        for (int i = 0; i < changes.size(); i++) {
+            long sequence = changes.get(i).getSequence();
+            if (sequence != expected && from > 0) {
+                if (i > 0) {
+                    // Se entrega hasta el hueco; la siguiente lectura empieza en él
+                    return i;
+                }
+                if (!gapExpired(expected)) {
+                    return 0;
+                }
+                System.err.println("Consumidor " + name + ": se saltan por ahora las secuencias "
+                        + expected + " a " + (sequence - 1));
+                // Un hueco enorme no viene de transacciones en curso sino, por ejemplo, de una purga
+                if (sequence - expected <= MAX_TRACKED_GAP) {
+                    long abandonAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lateChangeWindowMillis);
+                    for (long missing = expected; missing < sequence; missing++) {
+                        skipped.put(missing, abandonAt);
+                    }
+                }
+            }
+            expected = sequence + 1;
+        }
+        gapSequence = 0;
+        return changes.size();
+    }
+
+    private boolean gapExpired(long missing) {
+        long now = System.nanoTime();
+        if (gapSequence != missing) {
+            gapSequence = missing;
+            gapSinceNanos = now;
+        }
+        return now - gapSinceNanos >= TimeUnit.MILLISECONDS.toNanos(gapTimeoutMillis);
+    }
+
+    private long loadOffset() throws SQLException {
+        try (Connection conn = userDAO.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT last_seq FROM user_change_offsets WHERE consumer = ?")) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void storeOffset(long sequence) throws SQLException {
+        try (Connection conn = userDAO.getConnection()) {
+            try (PreparedStatement update = conn.prepareStatement(
+                    "UPDATE user_change_offsets SET last_seq = ? WHERE consumer = ?")) {
+                update.setLong(1, sequence);
+                update.setString(2, name);
+                if (update.executeUpdate() > 0) {
+                    return;
+                }
+            }
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO user_change_offsets (consumer, last_seq) VALUES (?, ?)")) {
+                insert.setString(1, name);
+                insert.setLong(2, sequence);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Recibe un lote de cambios en orden de secuencia
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+        void handle(List<UserChange> changes) throws Exception;
+    }
+}
@@ -1,8 +1,22 @@
 package com.example;
 
 import java.sql.*;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Clase Objeto de Acceso a Datos (DAO) para la entidad Usuario
@@ -10,6 +24,208 @@ import java.util.List;
  */
 public class UserDAO {
     
+    /** Tamaño por defecto de cada lote enviado con executeBatch */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    
+    // Tamaños fijos de las listas WHERE id IN (...): cada consulta se rellena hasta el tamaño
+    // inmediato superior para que solo existan unas pocas formas de sentencia preparada
+    private static final int[] IN_LIST_SIZES = {1, 8, 32, 128, 512};
+    
+    // Filas por viaje de red en drivers distintos de MySQL al recorrer un cursor
+    private static final int CURSOR_FETCH_SIZE = 1000;
+    
+    // Carácter de escape de LIKE; no es la barra invertida, que MySQL también trata como
+    // escape dentro de los literales de texto
+    private static final char LIKE_ESCAPE = '!';
+    
+    // Hilos cuyas escrituras no se anotan en el registro de cambios (withoutChangeFeed)
+    private static final ThreadLocal<Boolean> FEED_SUPPRESSED = ThreadLocal.withInitial(() -> false);
+    
+    // Bloqueo optimista: con versión conocida (>= 0) la fila solo se escribe si la conserva
+    private static final String UPDATE_SQL = "UPDATE users SET name = ?, email = ?, age = ?, version = version + 1 "
+            + "WHERE id = ? AND (? < 0 OR version = ?)";
+    
+    private static final String INSERT_SQL = "INSERT INTO users (name, email, age) VALUES (?, ?, ?)";
+    // Con IDs globales (shards) el ID y la versión llegan asignados en lugar de usar AUTO_INCREMENT
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO users (id, name, email, age, version) "
+            + "VALUES (?, ?, ?, ?, ?)";
+    
+    // Registro de cambios (outbox): se escribe en la misma transacción que el cambio. Altas y
+    // modificaciones copian la fila ya escrita, de modo que el registro refleja lo confirmado
+    private static final String RECORD_CREATE_SQL = "INSERT INTO user_changes (user_id, change_type, name, email, age, version) "
+            + "SELECT id, 'C', name, email, age, version FROM users WHERE id = ?";
+    private static final String RECORD_UPDATE_SQL = "INSERT INTO user_changes (user_id, change_type, name, email, age, version) "
+            + "SELECT id, 'U', name, email, age, version FROM users WHERE id = ?";
+    private static final String RECORD_DELETE_SQL = "INSERT INTO user_changes (user_id, change_type) VALUES (?, 'D')";
+    
+    private final UserCache cache;
+    private final ReplicaRouter router;
+    private volatile boolean explicitIds;
+    private volatile boolean changeFeedEnabled;
+    private volatile UserNameIndex nameIndex;
+    // Índice en construcción: las escrituras también lo actualizan para que no quede desfasado
+    private volatile UserNameIndex pendingNameIndex;
+    private volatile EmailBloomFilter emailFilter;
+    // Emails escritos mientras se construye el filtro; se añaden al filtro nuevo al publicarlo
+    private volatile Queue<String> pendingEmails;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    
+    /**
+     * Crea un DAO sin caché: cada lectura consulta la base de datos
+     */
+    public UserDAO() {
+        this(null);
+    }
+    
+    /**
+     * Crea un DAO que sirve getUserById desde una caché en memoria
+     * Las escrituras realizadas a través de este DAO actualizan o invalidan la caché
+     * @param cache la caché de usuarios, o null para no usar caché
+     */
+    public UserDAO(UserCache cache) {
+        this(cache, null);
+    }
+    
+    /**
+     * Crea un DAO que envía las escrituras al servidor principal del enrutado y las lecturas
+     * que admiten retraso a sus réplicas
+     * @param cache la caché de usuarios, o null para no usar caché
+     * @param router el enrutado entre principal y réplicas, o null para usar el de DatabaseConnection
+     */
+    public UserDAO(UserCache cache, ReplicaRouter router) {
+        this.cache = cache;
+        this.router = router;
+    }
+    
+    /**
+     * Hace que createUser y createUsers inserten el ID y la versión que ya trae cada usuario
+     * en lugar de usar AUTO_INCREMENT; lo usan los shards de ShardedUserDAO, cuyos IDs son globales
+     */
+    void useExplicitIds() {
+        this.explicitIds = true;
+    }
+    
+    /**
+     * Construye un índice de nombres en memoria recorriendo la tabla y lo usa en findUsersByName
+     * Las escrituras realizadas a través de este DAO mantienen el índice actualizado;
+     * los cambios hechos por otros procesos requieren volver a llamar a este método
+     * @return el índice construido
+     * @throws SQLException si la lectura de la tabla falla
+     */
+    public UserNameIndex buildNameIndex() throws SQLException {
+        UserNameIndex index = new UserNameIndex();
+        // Se publica antes de leer la tabla: las altas, cambios y bajas confirmados durante la
+        // lectura llegan al índice por sus escritores, y la fila leída no los sobrescribe
+        index.beginLoad();
+        pendingNameIndex = index;
+        try (Stream<User> users = streamAllUsers()) {
+            users.forEach(user -> index.load(user.getId(), user.getName()));
+            this.nameIndex = index;
+            return index;
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        } finally {
+            pendingNameIndex = null;
+            index.endLoad();
+        }
+    }
+    
+    /**
+     * @return el índice de nombres en uso, o null si findUsersByName consulta con LIKE
+     */
+    public UserNameIndex getNameIndex() {
+        return nameIndex;
+    }
+    
+    /**
+     * Construye un filtro de Bloom con los emails de la tabla y lo usa como caché negativa en
+     * getUserByEmail y existsByEmails: los emails que el filtro descarta no se consultan.
+     * Las escrituras realizadas a través de este DAO añaden sus emails al filtro; los usuarios
+     * creados por otros procesos requieren volver a llamar a este método
+     * @param falsePositiveRate probabilidad de consultar la base de datos por un email no registrado
+     * @return el filtro construido, con espacio para el doble de los usuarios actuales
+     * @throws SQLException si la lectura de la tabla falla
+     */
+    public EmailBloomFilter buildEmailFilter(double falsePositiveRate) throws SQLException {
+        // Se publica antes de leer la tabla: un email confirmado después de empezar la lectura
+        // puede no aparecer en ella, pero su escritor lo deja en esta cola
+        Queue<String> pending = new ConcurrentLinkedQueue<>();
+        pendingEmails = pending;
+        try (Connection conn = getReadConnection()) {
+            long count;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+                rs.next();
+                count = rs.getLong(1);
+            }
+            EmailBloomFilter filter = new EmailBloomFilter(Math.max(1024, count * 2), falsePositiveRate);
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT email FROM users",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(streamingFetchSize(conn));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        filter.add(rs.getString(1));
+                    }
+                }
+            }
+            this.emailFilter = filter;
+            // Los escritores que aún encuentren la cola después de vaciarla ya ven el filtro publicado
+            for (String email = pending.poll(); email != null; email = pending.poll()) {
+                filter.add(email);
+            }
+            return filter;
+        } finally {
+            pendingEmails = null;
+        }
+    }
+    
+    /**
+     * @return el filtro de emails en uso, o null si todas las búsquedas por email consultan la base de datos
+     */
+    public EmailBloomFilter getEmailFilter() {
+        return emailFilter;
+    }
+    
+    /**
+     * @return la caché de usuarios, o null si el DAO no usa caché
+     */
+    public UserCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * Activa el registro de cambios: cada alta, modificación o baja hecha por este DAO se
+     * anota en la tabla user_changes dentro de la misma transacción, y los consumidores la
+     * leen en orden con getChangesAfter o UserChangeConsumer
+     * @param enabled true para registrar los cambios
+     */
+    public void setChangeFeedEnabled(boolean enabled) {
+        this.changeFeedEnabled = enabled;
+    }
+    
+    public boolean isChangeFeedEnabled() {
+        return changeFeedEnabled;
+    }
+    
+    /**
+     * Ejecuta en el hilo actual escrituras que no se anotan en el registro de cambios, como
+     * las copias entre shards de UserResharder: para los consumidores no son cambios del
+     * usuario, y una baja y un alta en registros de shards distintos no tienen orden entre sí
+     */
+    static <T> T withoutChangeFeed(SqlWork<T> work) throws SQLException {
+        boolean previous = FEED_SUPPRESSED.get();
+        FEED_SUPPRESSED.set(true);
+        try {
+            return work.run();
+        } finally {
+            FEED_SUPPRESSED.set(previous);
+        }
+    }
+    
+    private boolean recordsChanges() {
+        return changeFeedEnabled && !FEED_SUPPRESSED.get();
+    }
+    
     /**
      * Crea un nuevo usuario en la base de datos
      * @param user el usuario a crear
@@ -17,32 +233,42 @@ public class UserDAO {
      * @throws SQLException si la operación de base de datos falla
      */
     public User createUser(User user) throws SQLException {
-        // Validate required fields
-        if (user.getName() == null) {
-            throw new SQLException("User name cannot be null");
-        }
-        if (user.getEmail() == null) {
-            throw new SQLException("User email cannot be null");
-        }
+        validateUser(user);
+        rememberEmail(user.getEmail());
         
-        String sql = "INSERT INTO users (name, email, age) VALUES (?, ?, ?)";
-        
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        boolean withId = explicitIds;
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = withId
+                     ? conn.prepareStatement(INSERT_WITH_ID_SQL)
+                     : conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
             
-            pstmt.setString(1, user.getName());
-            pstmt.setString(2, user.getEmail());
-            pstmt.setInt(3, user.getAge());
+            bindInsert(pstmt, user, withId);
             
-            int rowsAffected = pstmt.executeUpdate();
+            boolean feed = recordsChanges();
+            int rowsAffected = inChangeTransaction(conn, feed, () -> {
+                int rows = pstmt.executeUpdate();
+                if (rows > 0 && !withId) {
+                    // Obtener el ID generado
+                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            user.setId(generatedKeys.getInt(1));
+                        }
+                    }
+                }
+                if (rows > 0 && feed) {
+                    recordChanges(conn, UserChange.Type.CREATE, new int[] {user.getId()}, 1);
+                }
+                return rows;
+            });
             
             if (rowsAffected > 0) {
-                // Obtener el ID generado
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        user.setId(generatedKeys.getInt(1));
-                    }
+                user.setVersion(withId ? Math.max(0, user.getVersion()) : 0);
+                rememberEmail(user.getEmail());
+                markWrite();
+                if (cache != null) {
+                    cache.put(user);
                 }
+                indexName(user.getId(), user.getName());
             }
             
             return user;
@@ -51,26 +277,43 @@ public class UserDAO {
     
     /**
      * Lee un usuario por ID
+     * Con caché, los fallos se leen del principal: una réplica con retraso dejaría en la caché
+     * una fila antigua o ya eliminada hasta que caducara
      * @param id el ID del usuario
      * @return el usuario si se encuentra, null en caso contrario
      * @throws SQLException si la operación de base de datos falla
      */
     public User getUserById(int id) throws SQLException {
-        String sql = "SELECT * FROM users WHERE id = ?";
+        if (cache == null) {
+            return loadUserById(id, true);
+        }
+        
+        User cached = cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        User user = loadUserById(id, false);
+        if (user != null) {
+            cache.putIfFresh(user, stamp);
+        }
+        return user;
+    }
+    
+    /**
+     * @param fromReplica true si la lectura admite el retraso de una réplica
+     */
+    private User loadUserById(int id, boolean fromReplica) throws SQLException {
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = fromReplica ? getReadConnection() : getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, id);
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return new User(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getInt("age")
-                    );
+                    return UserRowMapper.map(rs);
                 }
             }
         }
@@ -78,6 +321,129 @@ public class UserDAO {
         return null;
     }
     
+    /**
+     * Lee varios usuarios por ID con consultas WHERE id IN (...) agrupadas
+     * Si el DAO usa caché, solo los IDs que no están en ella llegan a la base de datos, y se
+     * leen del principal
+     * @param ids los IDs de los usuarios
+     * @return mapa de ID a usuario; los IDs inexistentes no aparecen
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public Map<Integer, User> getUsersByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, User> users = new HashMap<>();
+        int[] misses = new int[ids.size()];
+        int missCount = 0;
+        
+        for (Integer id : ids) {
+            if (id == null || users.containsKey(id)) {
+                continue;
+            }
+            User cached = cache != null ? cache.get(id) : null;
+            if (cached != null) {
+                users.put(id, cached);
+            } else {
+                misses[missCount++] = id;
+            }
+        }
+        if (missCount == 0) {
+            return users;
+        }
+        
+        // La caché solo se rellena con lecturas del principal (ver getUserById)
+        long stamp = cache != null ? cache.stamp() : 0;
+        try (Connection conn = cache != null ? getConnection() : getReadConnection()) {
+            selectByIds(conn, null, misses, missCount, user -> {
+                users.put(user.getId(), user);
+                if (cache != null) {
+                    cache.putIfFresh(user, stamp);
+                }
+            });
+        }
+        
+        return users;
+    }
+    
+    /**
+     * Obtiene un usuario por email con el índice único de la columna
+     * @param email el email del usuario
+     * @return el usuario encontrado o null si no existe
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public User getUserByEmail(String email) throws SQLException {
+        EmailBloomFilter filter = emailFilter;
+        if (email == null || (filter != null && !filter.mightContain(email))) {
+            return null;
+        }
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE email = ?";
+        
+        // La lectura puede ir a una réplica, así que no rellena la caché (ver getUserById)
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, email);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return UserRowMapper.map(rs);
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Comprueba qué emails están registrados con consultas email IN (...) sobre el índice único
+     * Las listas se rellenan hasta tamaños fijos, como en getUsersByIds, y los emails que
+     * descarta el filtro de emails no se consultan. Como la collation por defecto de MySQL,
+     * la comparación no distingue mayúsculas ni acentos
+     * @param emails los emails a comprobar
+     * @return los emails de la colección que están registrados
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public Set<String> existsByEmails(Collection<String> emails) throws SQLException {
+        EmailBloomFilter filter = emailFilter;
+        // Emails pedidos por su forma normalizada, para reconocerlos en los resultados
+        Map<String, List<String>> requested = new HashMap<>();
+        List<String> candidates = new ArrayList<>(emails.size());
+        for (String email : emails) {
+            if (email == null || (filter != null && !filter.mightContain(email))) {
+                continue;
+            }
+            List<String> same = requested.computeIfAbsent(UserNameIndex.fold(email), key -> new ArrayList<>(1));
+            if (!same.contains(email)) {
+                same.add(email);
+                candidates.add(email);
+            }
+        }
+        
+        Set<String> registered = new HashSet<>();
+        if (candidates.isEmpty()) {
+            return registered;
+        }
+        int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        try (Connection conn = getReadConnection()) {
+            for (int from = 0; from < candidates.size(); from += maxSize) {
+                int chunk = Math.min(maxSize, candidates.size() - from);
+                int size = inListSize(chunk);
+                try (PreparedStatement pstmt = conn.prepareStatement(inSql("SELECT email FROM users WHERE email", size))) {
+                    for (int i = 0; i < size; i++) {
+                        // Los huecos repiten el último email, lo que no altera el resultado
+                        pstmt.setString(i + 1, candidates.get(from + Math.min(i, chunk - 1)));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            List<String> matches = requested.get(UserNameIndex.fold(rs.getString(1)));
+                            if (matches != null) {
+                                registered.addAll(matches);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return registered;
+    }
+    
     /**
      * Lee todos los usuarios de la base de datos
      * @return lista de todos los usuarios
@@ -85,47 +451,231 @@ public class UserDAO {
      */
     public List<User> getAllUsers() throws SQLException {
         List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users";
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
             
             while (rs.next()) {
-                users.add(new User(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("email"),
-                    rs.getInt("age")
-                ));
+                users.add(UserRowMapper.map(rs));
             }
         }
         
         return users;
     }
     
+    /**
+     * Recorre todos los usuarios con un cursor de solo lectura y solo avance
+     * Las filas se leen del servidor a medida que se consumen, por lo que la memoria usada
+     * no depende del tamaño de la tabla. El Stream debe cerrarse (por ejemplo con
+     * try-with-resources) para liberar la conexión, que queda ocupada mientras tanto
+     * @return Stream perezoso de usuarios
+     * @throws SQLException si la consulta no puede iniciarse
+     */
+    public Stream<User> streamAllUsers() throws SQLException {
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users";
+        
+        Connection conn = getReadConnection();
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(streamingFetchSize(conn));
+            rs = pstmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(rs, pstmt, conn);
+            throw e;
+        }
+        
+        ResultSet cursor = rs;
+        PreparedStatement statement = pstmt;
+        Spliterator<User> spliterator = new Spliterators.AbstractSpliterator<User>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super User> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                    action.accept(UserRowMapper.map(cursor));
+                    return true;
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+        
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> closeQuietly(cursor, statement, conn));
+    }
+    
+    /**
+     * Lee una página de usuarios ordenada por ID usando paginación keyset
+     * @param afterId cursor de la página anterior, o UserPage.FIRST_PAGE para empezar
+     * @param limit número máximo de usuarios de la página
+     * @return la página con su cursor de continuación
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public UserPage getUsersPage(int afterId, int limit) throws SQLException {
+        return getUsersPage(afterId, limit, null);
+    }
+    
+    /**
+     * Obtiene una página de usuarios con una consulta que puede cancelarse desde otro hilo
+     * @param afterId cursor devuelto por la página anterior, o UserPage.FIRST_PAGE
+     * @param limit número máximo de usuarios de la página
+     * @param cancellation marca de cancelación, o null si la consulta no se cancela
+     * @return la página de usuarios y el cursor de la siguiente
+     * @throws SQLException si la operación de base de datos falla o se cancela
+     */
+    public UserPage getUsersPage(int afterId, int limit, QueryCancellation cancellation) throws SQLException {
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE id > ? ORDER BY id LIMIT ?";
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, limit + 1);
+            
+            return readPage(pstmt, afterId, limit, cancellation);
+        }
+    }
+    
+    /**
+     * Obtiene los usuarios creados o modificados desde un momento, para refrescar cachés y
+     * copias sin releer la tabla: la consulta recorre el índice (updated_at, id)
+     * @param since momento desde el que se buscan cambios (incluido)
+     * @param limit número máximo de usuarios devueltos
+     * @return los usuarios ordenados por updated_at e ID
+     * @throws SQLException si la operación de base de datos falla
+     * @see #getUsersModifiedSince(Instant, int, int)
+     */
+    public List<User> getUsersModifiedSince(Instant since, int limit) throws SQLException {
+        return getUsersModifiedSince(since, 0, limit);
+    }
+    
+    /**
+     * Continúa una lectura de usuarios modificados tras el último usuario recibido
+     * Para pedir la siguiente página se pasan el updatedAt y el ID del último usuario, de modo
+     * que los usuarios con el mismo updated_at no se pierden ni se repiten. Las bajas no
+     * aparecen (se obtienen del registro de cambios), y una transacción confirmada tarde puede
+     * tener un updated_at anterior a lecturas ya hechas: conviene empezar cada sincronización
+     * unos segundos antes del último updatedAt recibido
+     * @param since updated_at del último usuario recibido, o el momento inicial
+     * @param afterId ID del último usuario recibido, o 0 para incluir todo since
+     * @param limit número máximo de usuarios devueltos
+     * @return los usuarios ordenados por updated_at e ID
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public List<User> getUsersModifiedSince(Instant since, int afterId, int limit) throws SQLException {
+        // La condición de rango va sola para que el índice se recorra desde since; la
+        // segunda solo descarta los empates ya recibidos
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users "
+                + "WHERE updated_at >= ? AND (updated_at > ? OR id > ?) ORDER BY updated_at, id LIMIT ?";
+        List<User> users = new ArrayList<>(Math.min(limit, 1024));
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            Timestamp from = Timestamp.from(since);
+            pstmt.setTimestamp(1, from);
+            pstmt.setTimestamp(2, from);
+            pstmt.setInt(3, afterId);
+            pstmt.setInt(4, limit);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(UserRowMapper.map(rs));
+                }
+            }
+        }
+        return users;
+    }
+    
     /**
      * Actualiza un usuario existente
+     * Si el usuario tiene versión, solo se escribe cuando la fila conserva esa versión
+     * (bloqueo optimista, sin bloquear la fila mientras se edita); al escribir, la versión
+     * del usuario se incrementa. Un usuario sin versión (User.UNVERSIONED) se sobrescribe
      * @param user el usuario con información actualizada
-     * @return true si la actualización fue exitosa, false en caso contrario
+     * @return true si la actualización fue exitosa, false si el usuario no existe
+     * @throws OptimisticLockException si otro proceso modificó el usuario después de leerlo
      * @throws SQLException si la operación de base de datos falla
      */
     public boolean updateUser(User user) throws SQLException {
-        String sql = "UPDATE users SET name = ?, email = ?, age = ? WHERE id = ?";
-        
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        rememberEmail(user.getEmail());
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(UPDATE_SQL)) {
             
-            pstmt.setString(1, user.getName());
-            pstmt.setString(2, user.getEmail());
-            pstmt.setInt(3, user.getAge());
-            pstmt.setInt(4, user.getId());
+            bindUpdate(pstmt, user);
             
-            int rowsAffected = pstmt.executeUpdate();
+            boolean feed = recordsChanges();
+            int rowsAffected = inChangeTransaction(conn, feed, () -> {
+                int rows = pstmt.executeUpdate();
+                if (rows > 0 && feed) {
+                    recordChanges(conn, UserChange.Type.UPDATE, new int[] {user.getId()}, 1);
+                }
+                return rows;
+            });
+            boolean versioned = user.getVersion() != User.UNVERSIONED;
+            boolean conflict = rowsAffected == 0 && versioned && exists(conn, user.getId());
+            if (rowsAffected > 0) {
+                rememberEmail(user.getEmail());
+                markWrite();
+                if (versioned) {
+                    user.setVersion(user.getVersion() + 1);
+                }
+            }
+            if (cache != null) {
+                // Sin versión conocida no se guarda una copia cuya versión no es la de la fila
+                if (rowsAffected > 0 && versioned) {
+                    cache.put(user);
+                } else {
+                    cache.invalidate(user.getId());
+                }
+            }
+            if (rowsAffected > 0) {
+                indexName(user.getId(), user.getName());
+            }
+            if (conflict) {
+                throw new OptimisticLockException(user.getId(), user.getVersion());
+            }
             return rowsAffected > 0;
         }
     }
     
+    /**
+     * Aplica un cambio a un usuario con bloqueo optimista, repitiéndolo si otro proceso
+     * modifica el usuario entre la lectura y la escritura
+     * @param id el ID del usuario
+     * @param change modificación que se aplica sobre el usuario recién leído
+     * @param maxAttempts número máximo de intentos, mayor que 0
+     * @return el usuario actualizado, o null si no existe
+     * @throws OptimisticLockException si todos los intentos encontraron un conflicto
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public User updateWithRetry(int id, Consumer<User> change, int maxAttempts) throws SQLException {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be greater than 0");
+        }
+        OptimisticLockException conflict = null;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            // Se lee siempre del principal: una copia en caché o en una réplica podría estar desfasada
+            User user = loadUserById(id, false);
+            if (user == null) {
+                return null;
+            }
+            change.accept(user);
+            try {
+                return updateUser(user) ? user : null;
+            } catch (OptimisticLockException e) {
+                conflict = e;
+            }
+        }
+        throw conflict;
+    }
+    
     /**
      * Elimina un usuario por ID
      * @param id el ID del usuario a eliminar
@@ -135,12 +685,26 @@ public class UserDAO {
     public boolean deleteUser(int id) throws SQLException {
         String sql = "DELETE FROM users WHERE id = ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, id);
             
-            int rowsAffected = pstmt.executeUpdate();
+            boolean feed = recordsChanges();
+            int rowsAffected = inChangeTransaction(conn, feed, () -> {
+                int rows = pstmt.executeUpdate();
+                if (rows > 0 && feed) {
+                    recordChanges(conn, UserChange.Type.DELETE, new int[] {id}, 1);
+                }
+                return rows;
+            });
+            if (rowsAffected > 0) {
+                markWrite();
+            }
+            if (cache != null) {
+                cache.invalidate(id);
+            }
+            unindexName(id);
             return rowsAffected > 0;
         }
     }
@@ -152,26 +716,693 @@ public class UserDAO {
      * @throws SQLException si la operación de base de datos falla
      */
     public List<User> findUsersByName(String name) throws SQLException {
+        UserNameIndex index = nameIndex;
+        // % y _ son comodines de LIKE que el índice no interpreta
+        if (index != null && name != null && name.indexOf('%') < 0 && name.indexOf('_') < 0) {
+            return findUsersByIndexedName(index, name);
+        }
+        
         List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users WHERE name LIKE ?";
+        String sql = "SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE name LIKE ?";
         
-        try (Connection conn = DatabaseConnection.getConnection();
+        try (Connection conn = getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, "%" + name + "%");
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    users.add(new User(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getInt("age")
-                    ));
+                    users.add(UserRowMapper.map(rs));
                 }
             }
         }
         
         return users;
     }
+    
+    /**
+     * Encuentra una página de usuarios por nombre (coincidencia parcial) ordenada por ID
+     * @param name el nombre a buscar
+     * @param afterId cursor de la página anterior, o UserPage.FIRST_PAGE para empezar
+     * @param limit número máximo de usuarios de la página
+     * @return la página con su cursor de continuación
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public UserPage findUsersByNamePage(String name, int afterId, int limit) throws SQLException {
+        return findUsersByNamePage(name, afterId, limit, null);
+    }
+    
+    /**
+     * Busca una página de usuarios por nombre con una consulta que puede cancelarse desde otro hilo
+     * El nombre se busca literalmente: % y _ no actúan como comodines, igual que en el
+     * filtro en memoria de la interfaz con el que se combinan las páginas
+     * @param name el nombre a buscar
+     * @param afterId cursor devuelto por la página anterior, o UserPage.FIRST_PAGE
+     * @param limit número máximo de usuarios de la página
+     * @param cancellation marca de cancelación, o null si la consulta no se cancela
+     * @return la página de usuarios coincidentes y el cursor de la siguiente
+     * @throws SQLException si la operación de base de datos falla o se cancela
+     */
+    public UserPage findUsersByNamePage(String name, int afterId, int limit,
+                                        QueryCancellation cancellation) throws SQLException {
+        String sql = "SELECT " + UserRowMapper.COLUMNS
+                + " FROM users WHERE name LIKE ? ESCAPE '" + LIKE_ESCAPE + "' AND id > ? ORDER BY id LIMIT ?";
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setString(1, "%" + escapeLike(name) + "%");
+            pstmt.setInt(2, afterId);
+            pstmt.setInt(3, limit + 1);
+            
+            return readPage(pstmt, afterId, limit, cancellation);
+        }
+    }
+    
+    /**
+     * Obtiene el tamaño de lote usado por las operaciones masivas
+     * @return número de filas por executeBatch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    /**
+     * Obtiene el número de conexiones del servidor principal que pueden usar a la vez las
+     * operaciones de este DAO; AsyncUserDAO lo usa como límite de concurrencia
+     * Las subclases que redirigen getConnection a otro pool deben sobrescribirlo
+     * @return tamaño máximo del pool principal del enrutado del DAO, o del de DatabaseConnection
+     */
+    public int getPoolMaxSize() {
+        return router != null ? router.getPrimary().getMaxSize() : DatabaseConnection.getPoolMaxSize();
+    }
+    
+    /**
+     * Configura el tamaño de lote usado por las operaciones masivas
+     * @param batchSize número de filas por executeBatch, mayor que 0
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * Crea varios usuarios en una sola transacción usando lotes JDBC
+     * Los IDs generados se asignan a cada usuario creado
+     * @param users los usuarios a crear
+     * @return resultado con las filas afectadas y los fallos por usuario
+     * @throws SQLException si la operación de base de datos falla fuera de una fila concreta
+     */
+    public BatchResult createUsers(Collection<User> users) throws SQLException {
+        boolean withId = explicitIds;
+        
+        List<User> items = new ArrayList<>(users);
+        for (User user : items) {
+            rememberEmail(user.getEmail());
+        }
+        BatchResult result = executeInBatches(withId ? INSERT_WITH_ID_SQL : INSERT_SQL, items, (pstmt, user) -> {
+            validateUser(user);
+            bindInsert(pstmt, user, withId);
+        }, withId ? null : (user, id) -> user.setId(id), UserChange.Type.CREATE, User::getId);
+        
+        for (int i = 0; i < items.size(); i++) {
+            if (result.getRowCount(i) > 0) {
+                User user = items.get(i);
+                user.setVersion(withId ? Math.max(0, user.getVersion()) : 0);
+                rememberEmail(user.getEmail());
+            }
+        }
+        
+        for (int i = 0; i < items.size(); i++) {
+            if (result.getRowCount(i) > 0) {
+                indexName(items.get(i).getId(), items.get(i).getName());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Actualiza varios usuarios en una sola transacción usando lotes JDBC
+     * Los usuarios con versión se comprueban como en updateUser; un conflicto no es un fallo
+     * del lote y se refleja con 0 filas afectadas, igual que un usuario inexistente
+     * @param users los usuarios con información actualizada
+     * @return resultado con las filas afectadas y los fallos por usuario
+     * @throws SQLException si la operación de base de datos falla fuera de una fila concreta
+     */
+    public BatchResult updateUsers(Collection<User> users) throws SQLException {
+        List<User> items = new ArrayList<>(users);
+        for (User user : items) {
+            rememberEmail(user.getEmail());
+        }
+        BatchResult result = executeInBatches(UPDATE_SQL, items, this::bindUpdate, null,
+                UserChange.Type.UPDATE, User::getId);
+        
+        for (int i = 0; i < items.size(); i++) {
+            User user = items.get(i);
+            if (result.getRowCount(i) > 0) {
+                rememberEmail(user.getEmail());
+                if (user.getVersion() != User.UNVERSIONED) {
+                    user.setVersion(user.getVersion() + 1);
+                }
+            }
+        }
+        
+        if (cache != null) {
+            for (User user : items) {
+                cache.invalidate(user.getId());
+            }
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (result.getRowCount(i) > 0) {
+                indexName(items.get(i).getId(), items.get(i).getName());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Elimina varios usuarios en una sola transacción usando lotes JDBC
+     * @param ids los IDs de los usuarios a eliminar
+     * @return resultado con las filas afectadas y los fallos por ID
+     * @throws SQLException si la operación de base de datos falla fuera de una fila concreta
+     */
+    public BatchResult deleteUsers(int[] ids) throws SQLException {
+        String sql = "DELETE FROM users WHERE id = ?";
+        List<Integer> items = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            items.add(id);
+        }
+        
+        BatchResult result = executeInBatches(sql, items, (pstmt, id) -> pstmt.setInt(1, id), null,
+                UserChange.Type.DELETE, Integer::intValue);
+        
+        if (cache != null) {
+            for (int id : ids) {
+                cache.invalidate(id);
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (result.getRowCount(i) > 0) {
+                unindexName(ids[i]);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Lee los cambios registrados tras una posición, en orden de secuencia
+     * Una secuencia puede faltar mientras su transacción sigue abierta o si se deshizo;
+     * UserChangeConsumer espera a que aparezca antes de seguir avanzando
+     * @param afterSequence última secuencia ya procesada, o 0 para empezar por el principio
+     * @param limit número máximo de cambios devueltos
+     * @return los cambios con secuencia mayor que afterSequence
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public List<UserChange> getChangesAfter(long afterSequence, int limit) throws SQLException {
+        String sql = "SELECT seq, user_id, change_type, name, email, age, version, changed_at "
+                + "FROM user_changes WHERE seq > ? ORDER BY seq LIMIT ?";
+        List<UserChange> changes = new ArrayList<>(Math.min(limit, 1024));
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            
+            pstmt.setLong(1, afterSequence);
+            pstmt.setInt(2, limit);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    UserChange.Type type = UserChange.Type.of(rs.getString(3).charAt(0));
+                    int userId = rs.getInt(2);
+                    User user = null;
+                    if (type != UserChange.Type.DELETE) {
+                        user = new User(userId, rs.getString(4), rs.getString(5), rs.getInt(6));
+                        user.setVersion(rs.getInt(7));
+                    }
+                    changes.add(new UserChange(rs.getLong(1), type, userId, user,
+                            rs.getTimestamp(8).toInstant()));
+                }
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * @return la secuencia del último cambio registrado, o 0 si el registro está vacío
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public long getLastChangeSequence() throws SQLException {
+        try (Connection conn = getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM user_changes")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+    
+    /**
+     * Borra los cambios ya procesados por todos los consumidores
+     * @param sequence última secuencia que se puede borrar
+     * @return número de cambios borrados
+     * @throws SQLException si la operación de base de datos falla
+     */
+    public int purgeChangesThrough(long sequence) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM user_changes WHERE seq <= ?")) {
+            
+            pstmt.setLong(1, sequence);
+            return pstmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Resuelve la búsqueda con el índice y lee solo las filas candidatas por clave primaria
+     * La condición LIKE se conserva para que la base de datos confirme cada coincidencia
+     */
+    private List<User> findUsersByIndexedName(UserNameIndex index, String name) throws SQLException {
+        int[] ids = index.search(name);
+        List<User> users = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return users;
+        }
+        
+        try (Connection conn = getReadConnection()) {
+            selectByIds(conn, "%" + name + "%", ids, ids.length, users::add);
+        }
+        
+        return users;
+    }
+    
+    /**
+     * Lee los usuarios de una lista de IDs en bloques WHERE id IN (...) de tamaño fijo
+     * @param namePattern patrón LIKE adicional sobre el nombre, o null para no filtrar
+     * @param ids los IDs a leer; los bloques se piden en el orden del array
+     * @param count número de IDs válidos al principio del array
+     */
+    private void selectByIds(Connection conn, String namePattern, int[] ids, int count,
+                             Consumer<User> consumer) throws SQLException {
+        int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        for (int from = 0; from < count; from += maxSize) {
+            int chunk = Math.min(maxSize, count - from);
+            int size = inListSize(chunk);
+            
+            String select = "SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE "
+                    + (namePattern != null ? "name LIKE ? AND " : "") + "id";
+            try (PreparedStatement pstmt = conn.prepareStatement(inSql(select, size) + " ORDER BY id")) {
+                int param = 1;
+                if (namePattern != null) {
+                    pstmt.setString(param++, namePattern);
+                }
+                for (int i = 0; i < size; i++) {
+                    // Los huecos repiten el último ID, lo que no altera el resultado
+                    pstmt.setInt(param++, ids[from + Math.min(i, chunk - 1)]);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(UserRowMapper.map(rs));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return el menor tamaño de IN_LIST_SIZES que admite count valores (como mucho el mayor)
+     */
+    private static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (size >= count) {
+                return size;
+            }
+        }
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+    
+    /**
+     * @return la consulta seguida de " IN (?, ?, ...)" con size parámetros
+     */
+    private static String inSql(String select, int size) {
+        StringBuilder sql = new StringBuilder(select).append(" IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+    
+    /**
+     * Lee hasta limit usuarios; la consulta pide una fila extra para saber si hay más
+     */
+    private UserPage readPage(PreparedStatement pstmt, int afterId, int limit,
+                              QueryCancellation cancellation) throws SQLException {
+        List<User> users = new ArrayList<>(Math.min(limit, 1024));
+        boolean hasMore = false;
+        
+        if (cancellation != null) {
+            cancellation.begin(pstmt);
+        }
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                if (users.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                users.add(UserRowMapper.map(rs));
+            }
+        } catch (SQLException e) {
+            throw cancellation != null ? cancellation.translate(e) : e;
+        } finally {
+            if (cancellation != null) {
+                cancellation.end(pstmt);
+            }
+        }
+        
+        int nextCursor = users.isEmpty() ? afterId : users.get(users.size() - 1).getId();
+        return new UserPage(users, nextCursor, hasMore);
+    }
+    
+    /**
+     * MySQL solo transmite las filas una a una con fetchSize = Integer.MIN_VALUE;
+     * el resto de drivers usan un tamaño de fetch positivo para leer por bloques
+     */
+    private static int streamingFetchSize(Connection conn) throws SQLException {
+        String url = conn.getMetaData().getURL();
+        return url != null && url.startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : CURSOR_FETCH_SIZE;
+    }
+    
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource != null) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    System.err.println("Error cerrando recurso: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private static void bindInsert(PreparedStatement pstmt, User user, boolean withId) throws SQLException {
+        if (!withId) {
+            pstmt.setString(1, user.getName());
+            pstmt.setString(2, user.getEmail());
+            pstmt.setInt(3, user.getAge());
+            return;
+        }
+        if (user.getId() <= 0) {
+            throw new SQLException("User id must be assigned before insert");
+        }
+        pstmt.setInt(1, user.getId());
+        pstmt.setString(2, user.getName());
+        pstmt.setString(3, user.getEmail());
+        pstmt.setInt(4, user.getAge());
+        pstmt.setInt(5, Math.max(0, user.getVersion()));
+    }
+    
+    private void bindUpdate(PreparedStatement pstmt, User user) throws SQLException {
+        pstmt.setString(1, user.getName());
+        pstmt.setString(2, user.getEmail());
+        pstmt.setInt(3, user.getAge());
+        pstmt.setInt(4, user.getId());
+        pstmt.setInt(5, user.getVersion());
+        pstmt.setInt(6, user.getVersion());
+    }
+    
+    private static boolean exists(Connection conn, int id) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM users WHERE id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    /**
+     * Obtiene la conexión del servidor principal, usada por las escrituras y por las lecturas
+     * que deben ser actuales; las subclases pueden sobrescribirlo (junto con getReadConnection)
+     * para medir o redirigir la obtención de conexiones
+     * @return una conexión del pool que la operación cierra al terminar
+     * @throws SQLException si no se puede obtener la conexión
+     */
+    protected Connection getConnection() throws SQLException {
+        return router != null ? router.getConnection() : DatabaseConnection.getConnection();
+    }
+    
+    /**
+     * Obtiene la conexión de las lecturas que admiten el retraso de una réplica
+     * Tras una escritura con readYourWritesMillis activo devuelve una conexión del principal
+     * @return una conexión que la operación cierra al terminar
+     * @throws SQLException si no se puede obtener la conexión
+     */
+    protected Connection getReadConnection() throws SQLException {
+        return router != null ? router.getReadConnection() : DatabaseConnection.getReadConnection();
+    }
+    
+    /**
+     * Escapa los comodines de LIKE para buscar el texto literalmente
+     */
+    private static String escapeLike(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+    
+    /**
+     * Aplica un nombre confirmado al índice de nombres y al que se esté construyendo
+     */
+    private void indexName(int id, String name) {
+        // El índice en construcción se lee primero: si ya se retiró, está publicado en nameIndex
+        UserNameIndex pending = pendingNameIndex;
+        if (pending != null) {
+            pending.put(id, name);
+        }
+        UserNameIndex index = nameIndex;
+        if (index != null && index != pending) {
+            index.put(id, name);
+        }
+    }
+    
+    private void unindexName(int id) {
+        UserNameIndex pending = pendingNameIndex;
+        if (pending != null) {
+            pending.remove(id);
+        }
+        UserNameIndex index = nameIndex;
+        if (index != null && index != pending) {
+            index.remove(id);
+        }
+    }
+    
+    /**
+     * Añade el email al filtro de emails y, si se está construyendo uno, a su cola
+     * Se llama antes de escribir, para que el filtro en uso no descarte el email en ningún
+     * momento, y de nuevo tras confirmar, para que no falte en un filtro cuya lectura de la
+     * tabla empezó antes; si la escritura falla solo queda un falso positivo
+     */
+    private void rememberEmail(String email) {
+        if (email == null) {
+            return;
+        }
+        // La cola se lee antes que el filtro: si ya se retiró, el filtro nuevo está publicado
+        Queue<String> pending = pendingEmails;
+        if (pending != null) {
+            pending.add(email);
+        }
+        EmailBloomFilter filter = emailFilter;
+        if (filter != null) {
+            filter.add(email);
+        }
+    }
+    
+    /**
+     * Anota la escritura para que las lecturas siguientes del hilo puedan ir al principal
+     */
+    private void markWrite() throws SQLException {
+        (router != null ? router : DatabaseConnection.getRouter()).markWrite();
+    }
+    
+    private void validateUser(User user) throws SQLException {
+        if (user.getName() == null) {
+            throw new SQLException("User name cannot be null");
+        }
+        if (user.getEmail() == null) {
+            throw new SQLException("User email cannot be null");
+        }
+    }
+    
+    /**
+     * Ejecuta una sentencia para cada elemento en lotes de batchSize dentro de una transacción
+     * Si un lote falla se deshace hasta su savepoint y se reintenta fila a fila,
+     * de modo que solo los elementos erróneos quedan fuera de la transacción
+     */
+    private <T> BatchResult executeInBatches(String sql, List<T> items, RowBinder<T> binder,
+                                             KeyHandler<T> keyHandler, UserChange.Type changeType,
+                                             ToIntFunction<T> idOf) throws SQLException {
+        BatchResult result = new BatchResult(items.size());
+        if (items.isEmpty()) {
+            return result;
+        }
+        int keyMode = keyHandler != null ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+        
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, keyMode)) {
+                int[] positions = new int[Math.min(batchSize, items.size())];
+                int pending = 0;
+                
+                for (int i = 0; i < items.size(); i++) {
+                    try {
+                        binder.bind(pstmt, items.get(i));
+                        pstmt.addBatch();
+                        positions[pending++] = i;
+                    } catch (SQLException e) {
+                        pstmt.clearParameters();
+                        result.addFailure(i, e);
+                    }
+                    
+                    if (pending == positions.length) {
+                        flushBatch(conn, pstmt, items, positions, pending, binder, keyHandler, result);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    flushBatch(conn, pstmt, items, positions, pending, binder, keyHandler, result);
+                }
+                
+                if (recordsChanges()) {
+                    int[] changed = new int[items.size()];
+                    int count = 0;
+                    for (int i = 0; i < items.size(); i++) {
+                        if (result.getRowCount(i) > 0) {
+                            changed[count++] = idOf.applyAsInt(items.get(i));
+                        }
+                    }
+                    recordChanges(conn, changeType, changed, count);
+                }
+                
+                conn.commit();
+                markWrite();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        
+        return result;
+    }
+    
+    private <T> void flushBatch(Connection conn, PreparedStatement pstmt, List<T> items,
+                                int[] positions, int count, RowBinder<T> binder,
+                                KeyHandler<T> keyHandler, BatchResult result) throws SQLException {
+        Savepoint savepoint = conn.setSavepoint();
+        try {
+            int[] counts = pstmt.executeBatch();
+            for (int j = 0; j < count; j++) {
+                // Con rewriteBatchedStatements el driver puede no informar filas por sentencia
+                result.setRowCount(positions[j], counts[j] == Statement.SUCCESS_NO_INFO ? 1 : counts[j]);
+            }
+            if (keyHandler != null) {
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    for (int j = 0; j < count && generatedKeys.next(); j++) {
+                        keyHandler.accept(items.get(positions[j]), generatedKeys.getInt(1));
+                    }
+                }
+            }
+            conn.releaseSavepoint(savepoint);
+        } catch (BatchUpdateException e) {
+            conn.rollback(savepoint);
+            pstmt.clearBatch();
+            
+            for (int j = 0; j < count; j++) {
+                T item = items.get(positions[j]);
+                try {
+                    binder.bind(pstmt, item);
+                    int rows = pstmt.executeUpdate();
+                    result.setRowCount(positions[j], rows);
+                    if (keyHandler != null && rows > 0) {
+                        try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                            if (generatedKeys.next()) {
+                                keyHandler.accept(item, generatedKeys.getInt(1));
+                            }
+                        }
+                    }
+                } catch (SQLException rowError) {
+                    result.addFailure(positions[j], rowError);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Ejecuta el trabajo en una transacción cuando hay que registrar cambios, para que el
+     * cambio y su anotación en user_changes se confirmen o se descarten juntos
+     */
+    private static <T> T inChangeTransaction(Connection conn, boolean feed, SqlWork<T> work) throws SQLException {
+        if (!feed) {
+            return work.run();
+        }
+        conn.setAutoCommit(false);
+        try {
+            T result = work.run();
+            conn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    /**
+     * Anota en user_changes los cambios de los primeros count IDs con una sentencia por lotes
+     */
+    private static void recordChanges(Connection conn, UserChange.Type type, int[] ids, int count) throws SQLException {
+        if (count == 0) {
+            return;
+        }
+        String sql = type == UserChange.Type.CREATE ? RECORD_CREATE_SQL
+                : type == UserChange.Type.UPDATE ? RECORD_UPDATE_SQL
+                : RECORD_DELETE_SQL;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < count; i++) {
+                pstmt.setInt(1, ids[i]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+    
+    /**
+     * Trabajo con la base de datos ejecutado dentro de una transacción
+     */
+    @FunctionalInterface
+    interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+    
+    /**
+     * Asigna los parámetros de un elemento a la sentencia preparada
+     */
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement pstmt, T item) throws SQLException;
+    }
+    
+    /**
+     * Recibe la clave generada para un elemento insertado
+     */
+    @FunctionalInterface
+    private interface KeyHandler<T> {
+        void accept(T item, int key);
+    }
 }
\ No newline at end of file
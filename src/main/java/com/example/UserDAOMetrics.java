@@ -0,0 +1,183 @@
+package com.example;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de métricas de UserDAO: una entrada por operación, errores por SQLState y
+ * registro de consultas lentas. Se publica por JMX con registerMBeans o periódicamente
+ * a un MetricsExporter con startExporter. Lo alimenta MeteredUserDAO
+ */
+public class UserDAOMetrics implements UserDAOMetricsMXBean, AutoCloseable {
+
+    /** Dominio JMX de los MBeans registrados */
+    public static final String JMX_DOMAIN = "com.example";
+
+    private static final String UNKNOWN_SQL_STATE = "unknown";
+
+    private final Map<String, OperationMetrics> operations = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errorsBySqlState = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile long slowQueryThresholdNanos;
+
+    private final List<ObjectName> registered = new ArrayList<>();
+    private ScheduledExecutorService exporterExecutor;
+
+    /**
+     * @param slowQueryThresholdMillis duración a partir de la cual una llamada se registra
+     *                                 como lenta; 0 o negativo para no registrarlas
+     */
+    public UserDAOMetrics(long slowQueryThresholdMillis) {
+        setSlowQueryThresholdMillis(slowQueryThresholdMillis);
+    }
+
+    /**
+     * Obtiene las métricas de una operación, creándolas la primera vez
+     * @param name nombre de la operación (por ejemplo "getUserById")
+     */
+    public synchronized OperationMetrics operation(String name) {
+        return operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    /**
+     * @return las métricas de todas las operaciones, en orden de creación
+     */
+    public synchronized Collection<OperationMetrics> getOperations() {
+        return new ArrayList<>(operations.values());
+    }
+
+    /**
+     * Cuenta un error por su SQLState
+     */
+    void recordError(SQLException e) {
+        String state = e.getSQLState() != null ? e.getSQLState() : UNKNOWN_SQL_STATE;
+        errorsBySqlState.computeIfAbsent(state, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Registra la llamada si supera el umbral de consulta lenta
+     * @param detail argumentos de la llamada, convertidos a texto solo si es lenta
+     */
+    void checkSlow(OperationMetrics operation, long nanos, long acquireNanos, Object detail) {
+        long threshold = slowQueryThresholdNanos;
+        if (threshold <= 0 || nanos < threshold) {
+            return;
+        }
+        slowQueries.increment();
+        System.err.printf("Consulta lenta: %s(%s) %.1f ms (espera de conexión %.1f ms)%n",
+                operation.getName(), detail == null ? "" : detail, nanos / 1e6, acquireNanos / 1e6);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCountsBySqlState() {
+        Map<String, Long> counts = new TreeMap<>();
+        errorsBySqlState.forEach((state, count) -> counts.put(state, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return slowQueries.sum();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long thresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+    }
+
+    /**
+     * Registra en el servidor JMX de la plataforma un MBean global y uno por operación
+     * existente, bajo com.example:type=UserDAO,name={name}
+     * @param name nombre que distingue este registro de otros en la misma JVM
+     * @throws JMException si algún MBean no se puede registrar
+     */
+    public synchronized void registerMBeans(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String base = JMX_DOMAIN + ":type=UserDAO,name=" + ObjectName.quote(name);
+        register(server, new ObjectName(base), this);
+        for (OperationMetrics operation : operations.values()) {
+            register(server, new ObjectName(base + ",operation=" + operation.getName()), operation);
+        }
+    }
+
+    /**
+     * Elimina del servidor JMX los MBeans registrados por este objeto
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Error eliminando MBean " + objectName + ": " + e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Envía el estado actual de las métricas al exportador
+     */
+    public void export(MetricsExporter exporter) {
+        exporter.export(getOperations(), getErrorCountsBySqlState());
+    }
+
+    /**
+     * Exporta las métricas cada periodMillis en un hilo de fondo; reemplaza al exportador anterior
+     */
+    public synchronized void startExporter(MetricsExporter exporter, long periodMillis) {
+        stopExporter();
+        exporterExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-dao-metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporterExecutor.scheduleAtFixedRate(() -> {
+            try {
+                export(exporter);
+            } catch (RuntimeException e) {
+                System.err.println("Error exportando métricas: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopExporter() {
+        if (exporterExecutor != null) {
+            exporterExecutor.shutdown();
+            exporterExecutor = null;
+        }
+    }
+
+    /**
+     * Detiene el exportador y elimina los MBeans
+     */
+    @Override
+    public void close() {
+        stopExporter();
+        unregisterMBeans();
+    }
+
+    private void register(MBeanServer server, ObjectName objectName, Object mbean) throws JMException {
+        server.registerMBean(mbean, objectName);
+        registered.add(objectName);
+    }
+}
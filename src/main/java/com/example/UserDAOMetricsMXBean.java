@@ -0,0 +1,17 @@
+package com.example;
+
+import java.util.Map;
+
+/**
+ * Vista JMX de las métricas globales de UserDAO
+ */
+public interface UserDAOMetricsMXBean {
+
+    Map<String, Long> getErrorCountsBySqlState();
+
+    long getSlowQueryCount();
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long thresholdMillis);
+}
@@ -1,22 +1,47 @@
 package com.example;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Interfaz gráfica para gestionar operaciones CRUD de usuarios
+ * Todas las consultas se ejecutan con SwingWorker fuera del hilo de eventos, de modo que la
+ * ventana sigue respondiendo; una nueva carga o búsqueda cancela la consulta anterior.
+ * La búsqueda se lanza mientras se escribe y se resuelve en memoria sobre los usuarios ya
+ * cargados, consultando la base de datos solo para los que faltan por cargar
  */
 public class UserGUI extends JFrame {
+    // Filas por página y margen de filas que dispara la carga de la página siguiente
+    private static final int PAGE_SIZE = 200;
+    private static final int PREFETCH_ROWS = 50;
+    // Pausa de escritura tras la que se lanza la búsqueda
+    private static final int SEARCH_DELAY_MILLIS = 150;
+    
     private UserDAO userDAO;
     
     // Componentes de interfaz
     private JTextField txtId, txtName, txtEmail, txtAge, txtSearch;
     private JTable table;
-    private DefaultTableModel tableModel;
+    private UserTableModel tableModel;
+    private JScrollPane scrollPane;
     private JButton btnCreate, btnUpdate, btnDelete, btnClear, btnSearch, btnRefresh;
+    private JProgressBar progressBar;
+    private Timer searchTimer;
+    
+    // Operaciones en segundo plano en curso y marca de la consulta de lectura vigente
+    private int busyCount;
+    private QueryCancellation currentQuery = new QueryCancellation();
+    
+    // Usuarios recorridos en el listado completo y si la tabla muestra ese listado
+    private final LoadedUserIndex loadedUsers = new LoadedUserIndex();
+    private boolean browsingAll;
     
     public UserGUI() {
         userDAO = new UserDAO();
@@ -110,13 +135,7 @@ public class UserGUI extends JFrame {
         panel.setBorder(BorderFactory.createTitledBorder("Lista de Usuarios"));
         
         // Crear tabla
-        String[] columns = {"ID", "Nombre", "Email", "Edad"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new UserTableModel(PAGE_SIZE);
         
         table = new JTable(tableModel);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -126,7 +145,9 @@ public class UserGUI extends JFrame {
             }
         });
         
-        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane = new JScrollPane(table);
+        // Cargar la página siguiente al acercarse al final de las filas visibles
+        scrollPane.getViewport().addChangeListener(e -> loadMoreIfNeeded());
         panel.add(scrollPane, BorderLayout.CENTER);
         
         return panel;
@@ -140,15 +161,43 @@ public class UserGUI extends JFrame {
         txtSearch = new JTextField(20);
         panel.add(txtSearch);
         
+        // Buscar mientras se escribe, cuando el texto deja de cambiar
+        searchTimer = new Timer(SEARCH_DELAY_MILLIS, e -> searchUsers(false));
+        searchTimer.setRepeats(false);
+        txtSearch.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        
         btnSearch = new JButton("Buscar");
         btnRefresh = new JButton("Mostrar Todos");
         
-        btnSearch.addActionListener(e -> searchUsers());
+        btnSearch.addActionListener(e -> {
+            searchTimer.stop();
+            searchUsers(true);
+        });
         btnRefresh.addActionListener(e -> loadAllUsers());
         
         panel.add(btnSearch);
         panel.add(btnRefresh);
         
+        // Indicador de actividad mientras hay consultas en segundo plano
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+        panel.add(progressBar);
+        
         return panel;
     }
     
@@ -168,26 +217,25 @@ public class UserGUI extends JFrame {
             
             int age = Integer.parseInt(ageStr);
             User user = new User(name, email, age);
-            user = userDAO.createUser(user);
-            
-            JOptionPane.showMessageDialog(this, 
-                "Usuario creado exitosamente con ID: " + user.getId(), 
-                "Éxito", 
-                JOptionPane.INFORMATION_MESSAGE);
-            
-            clearForm();
-            loadAllUsers();
+            runMutation(() -> userDAO.createUser(user), created -> {
+                JOptionPane.showMessageDialog(this, 
+                    "Usuario creado exitosamente con ID: " + created.getId(), 
+                    "Éxito", 
+                    JOptionPane.INFORMATION_MESSAGE);
+                
+                clearForm();
+                loadedUsers.put(created);
+                int row = tableModel.putUser(created);
+                if (row >= 0) {
+                    table.scrollRectToVisible(table.getCellRect(row, 0, true));
+                }
+            }, "Error al crear usuario: ");
             
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, 
                 "La edad debe ser un número válido", 
                 "Error de Validación", 
                 JOptionPane.ERROR_MESSAGE);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Error al crear usuario: " + e.getMessage(), 
-                "Error de Base de Datos", 
-                JOptionPane.ERROR_MESSAGE);
         }
     }
     
@@ -217,32 +265,34 @@ public class UserGUI extends JFrame {
             int id = Integer.parseInt(idStr);
             int age = Integer.parseInt(ageStr);
             User user = new User(id, name, email, age);
-            
-            boolean success = userDAO.updateUser(user);
-            if (success) {
-                JOptionPane.showMessageDialog(this, 
-                    "Usuario actualizado exitosamente", 
-                    "Éxito", 
-                    JOptionPane.INFORMATION_MESSAGE);
-                clearForm();
-                loadAllUsers();
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                    "No se encontró el usuario con ID: " + id, 
-                    "Error", 
-                    JOptionPane.ERROR_MESSAGE);
+            // La versión leída permite detectar si otro proceso modificó el usuario mientras tanto
+            int row = tableModel.indexOf(id);
+            if (row >= 0) {
+                user.setVersion(tableModel.getUserAt(row).getVersion());
             }
             
+            runMutation(() -> userDAO.updateUser(user), success -> {
+                if (success) {
+                    JOptionPane.showMessageDialog(this, 
+                        "Usuario actualizado exitosamente", 
+                        "Éxito", 
+                        JOptionPane.INFORMATION_MESSAGE);
+                    clearForm();
+                    loadedUsers.put(user);
+                    tableModel.putUser(user);
+                } else {
+                    JOptionPane.showMessageDialog(this, 
+                        "No se encontró el usuario con ID: " + id, 
+                        "Error", 
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }, "Error al actualizar usuario: ");
+            
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, 
                 "ID y edad deben ser números válidos", 
                 "Error de Validación", 
                 JOptionPane.ERROR_MESSAGE);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Error al actualizar usuario: " + e.getMessage(), 
-                "Error de Base de Datos", 
-                JOptionPane.ERROR_MESSAGE);
         }
     }
     
@@ -264,20 +314,22 @@ public class UserGUI extends JFrame {
                 JOptionPane.YES_NO_OPTION);
             
             if (confirm == JOptionPane.YES_OPTION) {
-                boolean success = userDAO.deleteUser(id);
-                if (success) {
-                    JOptionPane.showMessageDialog(this, 
-                        "Usuario eliminado exitosamente", 
-                        "Éxito", 
-                        JOptionPane.INFORMATION_MESSAGE);
-                    clearForm();
-                    loadAllUsers();
-                } else {
-                    JOptionPane.showMessageDialog(this, 
-                        "No se encontró el usuario con ID: " + id, 
-                        "Error", 
-                        JOptionPane.ERROR_MESSAGE);
-                }
+                runMutation(() -> userDAO.deleteUser(id), success -> {
+                    if (success) {
+                        JOptionPane.showMessageDialog(this, 
+                            "Usuario eliminado exitosamente", 
+                            "Éxito", 
+                            JOptionPane.INFORMATION_MESSAGE);
+                        clearForm();
+                        loadedUsers.remove(id);
+                        tableModel.removeUser(id);
+                    } else {
+                        JOptionPane.showMessageDialog(this, 
+                            "No se encontró el usuario con ID: " + id, 
+                            "Error", 
+                            JOptionPane.ERROR_MESSAGE);
+                    }
+                }, "Error al eliminar usuario: ");
             }
             
         } catch (NumberFormatException e) {
@@ -285,65 +337,210 @@ public class UserGUI extends JFrame {
                 "ID debe ser un número válido", 
                 "Error de Validación", 
                 JOptionPane.ERROR_MESSAGE);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Error al eliminar usuario: " + e.getMessage(), 
-                "Error de Base de Datos", 
-                JOptionPane.ERROR_MESSAGE);
         }
     }
     
     private void loadAllUsers() {
-        try {
-            List<User> users = userDAO.getAllUsers();
-            refreshTable(users);
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Error al cargar usuarios: " + e.getMessage(), 
-                "Error de Base de Datos", 
-                JOptionPane.ERROR_MESSAGE);
-        }
+        QueryCancellation query = newQuery();
+        browsingAll = true;
+        loadedUsers.clear();
+        tableModel.reset((afterId, limit) -> userDAO.getUsersPage(afterId, limit, query));
+        loadNextPage(added -> { });
     }
     
-    private void searchUsers() {
+    /**
+     * Vuelve al listado completo con los usuarios ya cargados, sin repetir las consultas
+     */
+    private void showLoadedUsers() {
+        QueryCancellation query = newQuery();
+        browsingAll = true;
+        tableModel.reset((afterId, limit) -> userDAO.getUsersPage(afterId, limit, query),
+            user -> true, loadedUsers.all());
+        loadMoreIfNeeded();
+    }
+    
+    /**
+     * @param interactive true si la pidió el botón Buscar; entonces se avisa de los
+     *                    términos vacíos y de las búsquedas sin resultados
+     */
+    private void searchUsers(boolean interactive) {
         String searchTerm = txtSearch.getText().trim();
         if (searchTerm.isEmpty()) {
-            JOptionPane.showMessageDialog(this, 
-                "Ingrese un término de búsqueda", 
-                "Error de Validación", 
-                JOptionPane.ERROR_MESSAGE);
+            if (interactive) {
+                JOptionPane.showMessageDialog(this, 
+                    "Ingrese un término de búsqueda", 
+                    "Error de Validación", 
+                    JOptionPane.ERROR_MESSAGE);
+            } else if (!browsingAll) {
+                showLoadedUsers();
+            }
             return;
         }
         
-        try {
-            List<User> users = userDAO.findUsersByName(searchTerm);
-            refreshTable(users);
+        QueryCancellation query = newQuery();
+        browsingAll = false;
+        String folded = UserNameIndex.fold(searchTerm);
+        // Los usuarios cargados se filtran en memoria; la base de datos solo se consulta
+        // para los IDs posteriores al último cargado
+        tableModel.reset((afterId, limit) -> userDAO.findUsersByNamePage(searchTerm, afterId, limit, query),
+            user -> UserNameIndex.fold(user.getName()).contains(folded),
+            loadedUsers.search(searchTerm));
+        if (tableModel.hasMore()) {
+            loadNextPage(found -> notifyIfNoResults(interactive, query));
+        } else {
+            notifyIfNoResults(interactive, query);
+        }
+    }
+    
+    private void notifyIfNoResults(boolean interactive, QueryCancellation query) {
+        if (interactive && tableModel.getRowCount() == 0 && !query.isCancelled()) {
+            JOptionPane.showMessageDialog(this, 
+                "No se encontraron usuarios con ese nombre", 
+                "Información", 
+                JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+    
+    private void loadMoreIfNeeded() {
+        if (!tableModel.hasMore() || tableModel.isLoading()) {
+            return;
+        }
+        Rectangle visible = scrollPane.getViewport().getViewRect();
+        int lastVisibleRow = table.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (lastVisibleRow < 0 || lastVisibleRow >= tableModel.getRowCount() - PREFETCH_ROWS) {
+            loadNextPage(added -> { });
+        }
+    }
+    
+    /**
+     * Cancela la consulta de lectura en curso y crea la marca de la siguiente
+     */
+    private QueryCancellation newQuery() {
+        currentQuery.cancel();
+        currentQuery = new QueryCancellation();
+        return currentQuery;
+    }
+    
+    /**
+     * Consulta en segundo plano la página siguiente y la añade a la tabla al terminar
+     * @param onLoaded recibe el número de filas añadidas
+     */
+    private void loadNextPage(IntConsumer onLoaded) {
+        UserTableModel.PageLoad load = tableModel.nextPage();
+        if (load == null) {
+            return;
+        }
+        QueryCancellation query = currentQuery;
+        boolean indexPage = browsingAll;
+        runInBackground(load::fetch,
+            page -> {
+                int added = tableModel.apply(load, page);
+                if (indexPage && query == currentQuery) {
+                    loadedUsers.addPage(page);
+                }
+                onLoaded.accept(added);
+            },
+            () -> tableModel.finish(load),
+            "Error al cargar usuarios: ");
+    }
+    
+    /**
+     * Ejecuta una modificación en segundo plano con los botones de edición desactivados
+     */
+    private <T> void runMutation(SqlTask<T> task, Consumer<T> onSuccess, String errorMessage) {
+        setEditingEnabled(false);
+        runInBackground(task, onSuccess, () -> setEditingEnabled(true), errorMessage);
+    }
+    
+    /**
+     * Ejecuta una operación de base de datos con SwingWorker y entrega el resultado en el
+     * hilo de eventos; las consultas canceladas terminan sin mostrar error
+     */
+    private <T> void runInBackground(SqlTask<T> task, Consumer<T> onSuccess, Runnable onFinish, 
+                                     String errorMessage) {
+        setBusy(true);
+        new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws SQLException {
+                return task.run();
+            }
             
-            if (users.isEmpty()) {
-                JOptionPane.showMessageDialog(this, 
-                    "No se encontraron usuarios con ese nombre", 
-                    "Información", 
-                    JOptionPane.INFORMATION_MESSAGE);
+            @Override
+            protected void done() {
+                setBusy(false);
+                deliver(this, onSuccess, onFinish, cause -> showError(cause, errorMessage));
             }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Error al buscar usuarios: " + e.getMessage(), 
-                "Error de Base de Datos", 
-                JOptionPane.ERROR_MESSAGE);
+        }.execute();
+    }
+    
+    /**
+     * Entrega el resultado de una tarea terminada y ejecuta onFinish después de onSuccess,
+     * de modo que onSuccess aún ve reservada la carga que le corresponde (por ejemplo, apply()
+     * descarta la página si finish() ya liberó su carga)
+     * @param onError recibe la causa si la tarea falló
+     */
+    static <T> void deliver(Future<T> result, Consumer<T> onSuccess, Runnable onFinish,
+                            Consumer<Throwable> onError) {
+        try {
+            onSuccess.accept(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            onError.accept(e.getCause());
+        } finally {
+            onFinish.run();
         }
     }
     
-    private void refreshTable(List<User> users) {
-        tableModel.setRowCount(0);
-        for (User user : users) {
-            Object[] row = {
-                user.getId(),
-                user.getName(),
-                user.getEmail(),
-                user.getAge()
-            };
-            tableModel.addRow(row);
+    /**
+     * Muestra el error de una tarea en segundo plano; las consultas canceladas no se muestran
+     */
+    private void showError(Throwable cause, String errorMessage) {
+        if (cause instanceof SQLException && QueryCancellation.isCancellation((SQLException) cause)) {
+            return;
         }
+        if (cause instanceof OptimisticLockException) {
+            JOptionPane.showMessageDialog(this, 
+                "Otro usuario modificó este registro. Se han recargado sus datos; revíselos y vuelva a guardar.", 
+                "Conflicto de Edición", 
+                JOptionPane.WARNING_MESSAGE);
+            reloadUser(((OptimisticLockException) cause).getUserId());
+            return;
+        }
+        JOptionPane.showMessageDialog(this, 
+            errorMessage + cause.getMessage(), 
+            "Error de Base de Datos", 
+            JOptionPane.ERROR_MESSAGE);
+    }
+    
+    /**
+     * Vuelve a leer un usuario y actualiza su fila y el formulario si sigue seleccionado
+     */
+    private void reloadUser(int id) {
+        runInBackground(() -> userDAO.getUserById(id), user -> {
+            if (user == null) {
+                loadedUsers.remove(id);
+                tableModel.removeUser(id);
+                return;
+            }
+            loadedUsers.put(user);
+            int row = tableModel.putUser(user);
+            if (row >= 0 && row == table.getSelectedRow()) {
+                loadSelectedUser();
+            }
+        }, () -> { }, "Error al cargar usuario: ");
+    }
+    
+    private void setBusy(boolean busy) {
+        busyCount += busy ? 1 : -1;
+        progressBar.setVisible(busyCount > 0);
+        progressBar.getParent().revalidate();
+    }
+    
+    private void setEditingEnabled(boolean enabled) {
+        btnCreate.setEnabled(enabled);
+        btnUpdate.setEnabled(enabled);
+        btnDelete.setEnabled(enabled);
     }
     
     private void loadSelectedUser() {
@@ -365,6 +562,14 @@ public class UserGUI extends JFrame {
         table.clearSelection();
     }
     
+    /**
+     * Operación de base de datos ejecutada por un SwingWorker
+     */
+    @FunctionalInterface
+    private interface SqlTask<T> {
+        T run() throws SQLException;
+    }
+    
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             UserGUI gui = new UserGUI();
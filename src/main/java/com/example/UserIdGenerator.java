@@ -0,0 +1,117 @@
+package com.example;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Generador de IDs de usuario únicos entre shards (algoritmo hi/lo)
+ * Reserva bloques de IDs en la tabla user_id_sequence de una base de datos común con
+ * SELECT ... FOR UPDATE y los reparte desde memoria, de modo que solo una de cada
+ * blockSize llamadas consulta la base de datos. Los IDs de un bloque que no se llegan
+ * a usar (por ejemplo al reiniciar la aplicación) se pierden, pero nunca se repiten
+ */
+public class UserIdGenerator {
+
+    /** Nombre de la secuencia de IDs de usuario en user_id_sequence */
+    public static final String SEQUENCE_NAME = "users";
+
+    private final DataSource dataSource;
+    private final int blockSize;
+
+    private int next;
+    private int limit;
+
+    /**
+     * @param dataSource base de datos que guarda la secuencia (normalmente el primer shard)
+     * @param blockSize IDs reservados por cada consulta, mayor que 0
+     */
+    public UserIdGenerator(DataSource dataSource, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be greater than 0");
+        }
+        this.dataSource = dataSource;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return un ID no entregado antes por ningún generador sobre la misma secuencia
+     * @throws SQLException si no se puede reservar un bloque nuevo
+     */
+    public synchronized int nextId() throws SQLException {
+        if (next >= limit) {
+            next = reserve(blockSize, 0);
+            limit = next + blockSize;
+        }
+        return next++;
+    }
+
+    /**
+     * Garantiza que los IDs entregados a partir de ahora sean mayores que id; se usa al
+     * repartir en shards usuarios que ya tenían ID
+     * @throws SQLException si la secuencia no se puede actualizar
+     */
+    public synchronized void reserveThrough(int id) throws SQLException {
+        reserve(0, id + 1);
+        // El bloque en memoria puede contener IDs ya usados: se descarta
+        next = 0;
+        limit = 0;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Avanza la secuencia en una transacción
+     * @param count IDs que se reservan
+     * @param minimum valor mínimo del primer ID reservado
+     * @return el primer ID reservado
+     */
+    private int reserve(int count, int minimum) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int first = Math.max(minimum, lockSequence(conn));
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "UPDATE user_id_sequence SET next_id = ? WHERE name = ?")) {
+                    pstmt.setInt(1, first + count);
+                    pstmt.setString(2, SEQUENCE_NAME);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+                return first;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Bloquea la fila de la secuencia, creándola en el primer uso
+     * @return el siguiente ID libre
+     */
+    private static int lockSequence(Connection conn) throws SQLException {
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT next_id FROM user_id_sequence WHERE name = ? FOR UPDATE")) {
+            select.setString(1, SEQUENCE_NAME);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        // Si otro proceso crea la fila a la vez, el INSERT falla por clave duplicada y basta repetir la llamada
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO user_id_sequence (name, next_id) VALUES (?, 1)")) {
+            insert.setString(1, SEQUENCE_NAME);
+            insert.executeUpdate();
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice en memoria de trigramas sobre (id, nombre) para búsquedas por subcadena
+ * Resuelve las mismas consultas que name LIKE '%term%' sin recorrer la tabla:
+ * cada trigrama apunta a la lista ordenada de IDs cuyos nombres lo contienen.
+ * La comparación ignora mayúsculas y acentos, como la collation por defecto de MySQL
+ */
+public class UserNameIndex {
+
+    private static final int GRAM = 3;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, String> names = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    // IDs escritos con put o remove mientras se carga el índice; null fuera de la carga
+    private Set<Integer> writtenDuringLoad;
+
+    /**
+     * Agrega o reemplaza el nombre de un usuario
+     * @param id el ID del usuario
+     * @param name el nombre del usuario
+     */
+    public void put(int id, String name) {
+        String folded = fold(name);
+        lock.writeLock().lock();
+        try {
+            if (writtenDuringLoad != null) {
+                writtenDuringLoad.add(id);
+            }
+            putFolded(id, folded);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empieza una carga desde la tabla: hasta endLoad, load no sobrescribe a los usuarios
+     * escritos con put o remove, cuya fila leída puede ser anterior a esa escritura
+     */
+    void beginLoad() {
+        lock.writeLock().lock();
+        try {
+            writtenDuringLoad = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega un usuario leído de la tabla durante la carga
+     */
+    void load(int id, String name) {
+        String folded = fold(name);
+        lock.writeLock().lock();
+        try {
+            if (writtenDuringLoad == null || !writtenDuringLoad.contains(id)) {
+                putFolded(id, folded);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void endLoad() {
+        lock.writeLock().lock();
+        try {
+            writtenDuringLoad = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Elimina un usuario del índice
+     * @param id el ID del usuario
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (writtenDuringLoad != null) {
+                writtenDuringLoad.add(id);
+            }
+            String previous = names.remove(id);
+            if (previous == null) {
+                return;
+            }
+            for (long gram : grams(previous)) {
+                Postings list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca los usuarios cuyo nombre contiene el término
+     * @param term el texto a buscar
+     * @return IDs que coinciden, en orden ascendente
+     */
+    public int[] search(String term) {
+        String folded = fold(term);
+        lock.readLock().lock();
+        try {
+            if (folded.length() < GRAM) {
+                return scan(folded);
+            }
+
+            long[] grams = grams(folded);
+            Postings smallest = null;
+            for (long gram : grams) {
+                Postings list = postings.get(gram);
+                if (list == null) {
+                    return new int[0];
+                }
+                if (smallest == null || list.size < smallest.size) {
+                    smallest = list;
+                }
+            }
+
+            // Los trigramas no garantizan el orden, así que se verifica cada candidato
+            int[] result = new int[smallest.size];
+            int count = 0;
+            for (int i = 0; i < smallest.size; i++) {
+                int id = smallest.ids[i];
+                if (names.get(id).contains(folded)) {
+                    result[count++] = id;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return número de usuarios indexados
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vacía el índice
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            names.clear();
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Normaliza un texto a minúsculas y sin acentos
+     * @param text el texto a normalizar
+     * @return el texto normalizado
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) > 0x7F) {
+                return COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return lower;
+    }
+
+    private void putFolded(int id, String folded) {
+        String previous = names.put(id, folded);
+        if (previous != null) {
+            if (previous.equals(folded)) {
+                return;
+            }
+            for (long gram : grams(previous)) {
+                Postings list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+        for (long gram : grams(folded)) {
+            postings.computeIfAbsent(gram, g -> new Postings()).add(id);
+        }
+    }
+
+    // Términos de menos de tres caracteres no tienen trigramas: se recorren los nombres
+    private int[] scan(String folded) {
+        int[] result = new int[names.size()];
+        int count = 0;
+        for (Map.Entry<Integer, String> entry : names.entrySet()) {
+            if (entry.getValue().contains(folded)) {
+                result[count++] = entry.getKey();
+            }
+        }
+        int[] ids = Arrays.copyOf(result, count);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static long[] grams(String folded) {
+        if (folded.length() < GRAM) {
+            return new long[0];
+        }
+        long[] grams = new long[folded.length() - GRAM + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) folded.charAt(i) << 32)
+                    | ((long) folded.charAt(i + 1) << 16)
+                    | folded.charAt(i + 2);
+        }
+        return grams;
+    }
+
+    /**
+     * Lista ordenada de IDs; como los IDs crecen, casi todas las inserciones van al final
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                int pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, id);
+                return;
+            }
+            insertAt(size, id);
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        private void insertAt(int pos, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * Copia local de solo lectura de la tabla users para buscar por ID y por email sin consultar la base de datos
+ * load() recorre la tabla con streamAllUsers y refresh() aplica los usuarios modificados desde la
+ * última lectura (getUsersModifiedSince), releyendo un margen de overlapMillis para no perder
+ * transacciones confirmadas tarde. Las filas se guardan en tablas de direccionamiento abierto
+ * sobre arrays de primitivos y los textos en un único byte[] en UTF-8: entre 50 y 100 bytes
+ * por usuario más sus textos, sin un objeto por fila. containsId, idForEmail, ageOf, appendName
+ * y appendEmail no reservan memoria; getUserById y getUserByEmail crean el User devuelto.
+ * Las bajas solo se ven en el registro de cambios: con setApplyFeedDeletes(true) se leen de
+ * user_changes; si no, un usuario borrado sigue en la copia hasta el siguiente load()
+ */
+public class UserNearCache implements AutoCloseable {
+
+    /** Margen por defecto con el que se releen las modificaciones en cada refresh() */
+    public static final long DEFAULT_OVERLAP_MILLIS = 5000;
+
+    // Usuarios o cambios pedidos por consulta al refrescar
+    private static final int PAGE_SIZE = 1000;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Bytes de textos descartados a partir de los cuales se compacta el array de textos
+    private static final int MIN_COMPACT_GARBAGE = 64 * 1024;
+
+    private final UserDAO userDAO;
+    private final StampedLock lock = new StampedLock();
+    private Table table = new Table(INITIAL_CAPACITY, new byte[0]);
+
+    // Estado de refresco, protegido por el monitor de la instancia
+    private boolean loaded;
+    private boolean applyFeedDeletes;
+    private long overlapMillis = DEFAULT_OVERLAP_MILLIS;
+    private Instant watermark = Instant.EPOCH;
+    private long feedSequence;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param userDAO DAO del que se leen la copia inicial y las modificaciones
+     */
+    public UserNearCache(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
+    /**
+     * Lee las bajas del registro de cambios (user_changes) en cada refresh(); requiere que los
+     * escritores tengan activado UserDAO.setChangeFeedEnabled. Debe indicarse antes de load()
+     */
+    public synchronized void setApplyFeedDeletes(boolean applyFeedDeletes) {
+        this.applyFeedDeletes = applyFeedDeletes;
+    }
+
+    public synchronized void setOverlapMillis(long overlapMillis) {
+        this.overlapMillis = overlapMillis;
+    }
+
+    /**
+     * Carga la copia completa recorriendo la tabla; las búsquedas siguen respondiendo con la
+     * copia anterior hasta que termina
+     * @throws SQLException si la lectura falla
+     */
+    public synchronized void load() throws SQLException {
+        long sequence = applyFeedDeletes ? userDAO.getLastChangeSequence() : 0;
+        Table loading = new Table(INITIAL_CAPACITY, new byte[INITIAL_CAPACITY * 16]);
+        Instant newest = Instant.EPOCH;
+        try (Stream<User> users = userDAO.streamAllUsers()) {
+            Iterator<User> it = users.iterator();
+            while (it.hasNext()) {
+                User user = it.next();
+                loading = loading.put(user);
+                newest = later(newest, user.getUpdatedAt());
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            table = loading;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        watermark = newest;
+        feedSequence = sequence;
+        loaded = true;
+    }
+
+    /**
+     * Carga la copia desde una instantánea sin consultar la base de datos; el siguiente
+     * refresh() pide los cambios posteriores a su watermark y a su posición en el registro
+     * @param snapshot instantánea escrita con writeSnapshot o UserSnapshot.write
+     */
+    public synchronized void load(UserSnapshot snapshot) {
+        int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, snapshot.size() * 2 - 1)) << 1;
+        Table loading = new Table(capacity, new byte[Math.max(1024, snapshot.textBytes())]);
+        for (int row = 0; row < snapshot.size(); row++) {
+            loading = loading.put(snapshot, row);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            table = loading;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        watermark = snapshot.getWatermark();
+        feedSequence = snapshot.getFeedSequence();
+        loaded = true;
+    }
+
+    /**
+     * Guarda la copia en una instantánea, con el watermark y la posición en el registro del
+     * último refresco; las búsquedas siguen atendiéndose mientras se escribe el fichero
+     * @throws IOException si el fichero no se puede escribir
+     */
+    public synchronized void writeSnapshot(Path file) throws IOException {
+        UserSnapshot.Writer writer = new UserSnapshot.Writer();
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            for (int i = 0; i < current.ids.length; i++) {
+                if (current.ids[i] != 0) {
+                    long name = current.names[i];
+                    long email = current.emails[i];
+                    writer.add(current.ids[i], current.ages[i], current.versions[i],
+                            current.text, offsetOf(name), lengthOf(name),
+                            current.text, offsetOf(email), lengthOf(email));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        writer.write(file, watermark, feedSequence);
+    }
+
+    /**
+     * Aplica las altas y modificaciones (y las bajas, si se leen del registro) desde el último refresco
+     * @return número de usuarios añadidos, modificados o eliminados en la copia
+     * @throws IllegalStateException si aún no se ha llamado a load()
+     * @throws SQLException si la lectura falla; la copia queda como estaba
+     */
+    public synchronized int refresh() throws SQLException {
+        if (!loaded) {
+            throw new IllegalStateException("Call load() before refresh()");
+        }
+        List<User> modified = new ArrayList<>();
+        Instant from = watermark.minusMillis(overlapMillis);
+        int afterId = 0;
+        List<User> page;
+        do {
+            page = userDAO.getUsersModifiedSince(from, afterId, PAGE_SIZE);
+            modified.addAll(page);
+            if (!page.isEmpty()) {
+                User last = page.get(page.size() - 1);
+                from = last.getUpdatedAt();
+                afterId = last.getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+
+        List<Integer> deleted = new ArrayList<>();
+        long sequence = applyFeedDeletes ? readDeletes(deleted) : feedSequence;
+
+        int applied = 0;
+        Instant newest = watermark;
+        long stamp = lock.writeLock();
+        try {
+            for (User user : modified) {
+                int before = table.changeCount;
+                table = table.put(user);
+                applied += table.changeCount - before;
+                newest = later(newest, user.getUpdatedAt());
+            }
+            for (int id : deleted) {
+                if (table.remove(id)) {
+                    applied++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        watermark = newest;
+        feedSequence = sequence;
+        return applied;
+    }
+
+    /**
+     * Refresca la copia cada intervalMillis en un hilo de fondo hasta llamar a stop()
+     * Los errores se registran y la copia se mantiene hasta el siguiente intento
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Near cache already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "user-near-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Error refrescando la copia de usuarios: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detiene el refresco periódico; la copia sigue disponible para búsquedas
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return memoria aproximada en bytes de las tablas y los textos de la copia
+     */
+    public long getMemoryBytes() {
+        long stamp = lock.readLock();
+        try {
+            return table.memoryBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsId(int id) {
+        long stamp = lock.readLock();
+        try {
+            return table.slotOf(id) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param email el email exacto (distingue mayúsculas y minúsculas)
+     * @return el ID del usuario con ese email, o 0 si no está en la copia
+     */
+    public int idForEmail(CharSequence email) {
+        long stamp = lock.readLock();
+        try {
+            return table.idForEmail(email);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return la edad del usuario, o -1 si no está en la copia
+     */
+    public int ageOf(int id) {
+        long stamp = lock.readLock();
+        try {
+            int slot = table.slotOf(id);
+            return slot < 0 ? -1 : table.ages[slot];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Añade el nombre del usuario a un StringBuilder reutilizado por el llamador
+     * @return false si el usuario no está en la copia
+     */
+    public boolean appendName(int id, StringBuilder target) {
+        long stamp = lock.readLock();
+        try {
+            int slot = table.slotOf(id);
+            if (slot < 0) {
+                return false;
+            }
+            appendText(table.view, table.names[slot], target);
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Añade el email del usuario a un StringBuilder reutilizado por el llamador
+     * @return false si el usuario no está en la copia
+     */
+    public boolean appendEmail(int id, StringBuilder target) {
+        long stamp = lock.readLock();
+        try {
+            int slot = table.slotOf(id);
+            if (slot < 0) {
+                return false;
+            }
+            appendText(table.view, table.emails[slot], target);
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return el usuario (sin updatedAt), o null si no está en la copia
+     */
+    public User getUserById(int id) {
+        long stamp = lock.readLock();
+        try {
+            return table.userAt(table.slotOf(id));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return el usuario con ese email exacto (sin updatedAt), o null si no está en la copia
+     */
+    public User getUserByEmail(String email) {
+        long stamp = lock.readLock();
+        try {
+            int id = table.idForEmail(email);
+            return id == 0 ? null : table.userAt(table.slotOf(id));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Lee las bajas registradas tras feedSequence
+     * La posición solo avanza hasta el primer hueco de secuencia (transacción aún abierta),
+     * salvo que el cambio posterior al hueco tenga más de overlapMillis; las bajas releídas
+     * en el siguiente refresco no tienen efecto
+     * @return la nueva posición en el registro
+     */
+    private long readDeletes(List<Integer> deleted) throws SQLException {
+        Instant expired = Instant.now().minusMillis(overlapMillis);
+        long position = feedSequence;
+        long cursor = feedSequence;
+        boolean contiguous = true;
+        List<UserChange> changes;
+        do {
+            changes = userDAO.getChangesAfter(cursor, PAGE_SIZE);
+            for (UserChange change : changes) {
+                if (change.getType() == UserChange.Type.DELETE) {
+                    deleted.add(change.getUserId());
+                }
+                if (contiguous) {
+                    if (change.getSequence() == position + 1 || change.getChangedAt().isBefore(expired)) {
+                        position = change.getSequence();
+                    } else {
+                        contiguous = false;
+                    }
+                }
+                cursor = change.getSequence();
+            }
+        } while (changes.size() == PAGE_SIZE);
+        return position;
+    }
+
+    private static Instant later(Instant current, Instant candidate) {
+        return candidate != null && candidate.isAfter(current) ? candidate : current;
+    }
+
+    // Los textos se guardan como referencias long: posición en text (32 bits altos) y longitud en bytes
+
+    private static int offsetOf(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    private static int lengthOf(long ref) {
+        return (int) ref;
+    }
+
+    private static int hashText(ByteBuffer text, long ref) {
+        return Utf8Text.hash(text, offsetOf(ref), lengthOf(ref));
+    }
+
+    private static boolean textEquals(ByteBuffer text, long ref, CharSequence value) {
+        return Utf8Text.equals(text, offsetOf(ref), lengthOf(ref), value);
+    }
+
+    private static void appendText(ByteBuffer text, long ref, StringBuilder target) {
+        Utf8Text.append(text, offsetOf(ref), lengthOf(ref), target);
+    }
+
+    private static int mix(int hash) {
+        return Utf8Text.mix(hash);
+    }
+
+    /**
+     * Tablas de la copia: una tabla de direccionamiento abierto por ID (sondeo lineal) con las
+     * columnas en arrays paralelos y otra por email que guarda el ID. Los borrados desplazan
+     * las entradas siguientes hacia atrás, así que no hay marcas de borrado
+     */
+    private static final class Table {
+        int[] ids;
+        int[] ages;
+        int[] versions;
+        long[] names;
+        long[] emails;
+        int[] emailIds;
+        int mask;
+        int size;
+
+        byte[] text;
+        // Vista de text para leer los textos con Utf8Text; se rehace al cambiar el array
+        ByteBuffer view;
+        int textLength;
+        int garbage;
+
+        // Cambios aplicados, para que refresh() cuente los que no eran repeticiones
+        int changeCount;
+
+        Table(int capacity, byte[] text) {
+            ids = new int[capacity];
+            ages = new int[capacity];
+            versions = new int[capacity];
+            names = new long[capacity];
+            emails = new long[capacity];
+            emailIds = new int[capacity];
+            mask = capacity - 1;
+            this.text = text;
+            this.view = ByteBuffer.wrap(text);
+        }
+
+        int slotOf(int id) {
+            if (id <= 0) {
+                return -1;
+            }
+            for (int i = mix(id) & mask; ids[i] != 0; i = (i + 1) & mask) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int idForEmail(CharSequence email) {
+            for (int i = mix(Utf8Text.hash(email)) & mask; emailIds[i] != 0; i = (i + 1) & mask) {
+                int id = emailIds[i];
+                if (textEquals(view, emails[slotOf(id)], email)) {
+                    return id;
+                }
+            }
+            return 0;
+        }
+
+        User userAt(int slot) {
+            if (slot < 0) {
+                return null;
+            }
+            User user = new User(ids[slot], string(names[slot]), string(emails[slot]), ages[slot]);
+            user.setVersion(versions[slot]);
+            return user;
+        }
+
+        /**
+         * Añade o sustituye un usuario; una fila con versión anterior a la guardada se ignora
+         * @return esta tabla o, si ha tenido que crecer, la nueva
+         */
+        Table put(User user) {
+            int slot = slotOf(user.getId());
+            if (slot >= 0) {
+                if (user.getVersion() <= versions[slot]) {
+                    return this;
+                }
+                removeEmail(user.getId(), emails[slot]);
+                garbage += lengthOf(names[slot]) + lengthOf(emails[slot]);
+            } else {
+                if ((size + 1) * 3 > ids.length * 2) {
+                    return grow().put(user);
+                }
+                slot = mix(user.getId()) & mask;
+                while (ids[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = user.getId();
+                size++;
+            }
+            ages[slot] = user.getAge();
+            versions[slot] = user.getVersion();
+            names[slot] = appendString(user.getName());
+            emails[slot] = appendString(user.getEmail());
+            insertEmail(user.getId(), emails[slot]);
+            changeCount++;
+            if (garbage > MIN_COMPACT_GARBAGE && garbage > textLength / 2) {
+                compactText();
+            }
+            return this;
+        }
+
+        /**
+         * Añade una fila de una instantánea, copiando sus textos; solo se usa al cargar una
+         * instantánea, cuyos IDs no se repiten
+         */
+        Table put(UserSnapshot snapshot, int row) {
+            if ((size + 1) * 3 > ids.length * 2) {
+                return grow().put(snapshot, row);
+            }
+            int id = snapshot.idAt(row);
+            int slot = mix(id) & mask;
+            while (ids[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            size++;
+            ages[slot] = snapshot.ageAt(row);
+            versions[slot] = snapshot.versionAt(row);
+            names[slot] = appendBytes(snapshot.text(), snapshot.nameOffset(row), snapshot.nameLength(row));
+            emails[slot] = appendBytes(snapshot.text(), snapshot.emailOffset(row), snapshot.emailLength(row));
+            insertEmail(id, emails[slot]);
+            return this;
+        }
+
+        boolean remove(int id) {
+            int slot = slotOf(id);
+            if (slot < 0) {
+                return false;
+            }
+            removeEmail(id, emails[slot]);
+            garbage += lengthOf(names[slot]) + lengthOf(emails[slot]);
+            size--;
+            changeCount++;
+
+            // Desplaza hacia atrás las entradas que no quedarían accesibles con el hueco
+            int hole = slot;
+            for (int i = (hole + 1) & mask; ids[i] != 0; i = (i + 1) & mask) {
+                int home = mix(ids[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    ids[hole] = ids[i];
+                    ages[hole] = ages[i];
+                    versions[hole] = versions[i];
+                    names[hole] = names[i];
+                    emails[hole] = emails[i];
+                    hole = i;
+                }
+            }
+            ids[hole] = 0;
+            return true;
+        }
+
+        private void insertEmail(int id, long ref) {
+            int i = mix(hashText(view, ref)) & mask;
+            while (emailIds[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            emailIds[i] = id;
+        }
+
+        private void removeEmail(int id, long ref) {
+            int hole = mix(hashText(view, ref)) & mask;
+            while (emailIds[hole] != id) {
+                hole = (hole + 1) & mask;
+            }
+            for (int i = (hole + 1) & mask; emailIds[i] != 0; i = (i + 1) & mask) {
+                int home = mix(hashText(view, emails[slotOf(emailIds[i])])) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    emailIds[hole] = emailIds[i];
+                    hole = i;
+                }
+            }
+            emailIds[hole] = 0;
+        }
+
+        private long appendString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensureText(bytes.length);
+            System.arraycopy(bytes, 0, text, textLength, bytes.length);
+            long ref = ((long) textLength << 32) | bytes.length;
+            textLength += bytes.length;
+            return ref;
+        }
+
+        private long appendBytes(ByteBuffer source, int offset, int length) {
+            ensureText(length);
+            for (int i = 0; i < length; i++) {
+                text[textLength + i] = source.get(offset + i);
+            }
+            long ref = ((long) textLength << 32) | length;
+            textLength += length;
+            return ref;
+        }
+
+        private void ensureText(int length) {
+            if (textLength + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length + (text.length >> 1), textLength + length));
+                view = ByteBuffer.wrap(text);
+            }
+        }
+
+        private String string(long ref) {
+            return Utf8Text.toString(view, offsetOf(ref), lengthOf(ref));
+        }
+
+        /**
+         * Copia los textos vivos a un array nuevo, descartando los de filas borradas o modificadas
+         */
+        private void compactText() {
+            byte[] old = text;
+            text = new byte[(textLength - garbage) * 3 / 2];
+            view = ByteBuffer.wrap(text);
+            textLength = 0;
+            garbage = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    names[i] = copyText(old, names[i]);
+                    emails[i] = copyText(old, emails[i]);
+                }
+            }
+        }
+
+        private long copyText(byte[] from, long ref) {
+            int length = lengthOf(ref);
+            System.arraycopy(from, offsetOf(ref), text, textLength, length);
+            long copied = ((long) textLength << 32) | length;
+            textLength += length;
+            return copied;
+        }
+
+        private Table grow() {
+            Table grown = new Table(ids.length * 2, text);
+            grown.textLength = textLength;
+            grown.garbage = garbage;
+            grown.changeCount = changeCount;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    int slot = mix(ids[i]) & grown.mask;
+                    while (grown.ids[slot] != 0) {
+                        slot = (slot + 1) & grown.mask;
+                    }
+                    grown.ids[slot] = ids[i];
+                    grown.ages[slot] = ages[i];
+                    grown.versions[slot] = versions[i];
+                    grown.names[slot] = names[i];
+                    grown.emails[slot] = emails[i];
+                    grown.size++;
+                }
+            }
+            for (int i = 0; i < grown.ids.length; i++) {
+                if (grown.ids[i] != 0) {
+                    grown.insertEmail(grown.ids[i], grown.emails[i]);
+                }
+            }
+            return grown;
+        }
+
+        long memoryBytes() {
+            // Por entrada: id, edad, versión, dos referencias de texto y el ID del índice por email
+            return (long) ids.length * (4 + 4 + 4 + 8 + 8 + 4) + text.length;
+        }
+    }
+}
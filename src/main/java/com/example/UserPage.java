@@ -0,0 +1,51 @@
+package com.example;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Página de usuarios obtenida por paginación keyset (ordenada por ID)
+ * El cursor de continuación es el ID del último usuario de la página
+ */
+public class UserPage {
+
+    /** Cursor para pedir la primera página */
+    public static final int FIRST_PAGE = 0;
+
+    private final List<User> users;
+    private final int nextCursor;
+    private final boolean hasMore;
+
+    public UserPage(List<User> users, int nextCursor, boolean hasMore) {
+        this.users = Collections.unmodifiableList(users);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * @return cursor a pasar como afterId para obtener la página siguiente
+     */
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return true si existen más usuarios después de esta página
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPage{" +
+                "size=" + users.size() +
+                ", nextCursor=" + nextCursor +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
@@ -0,0 +1,200 @@
+package com.example;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia usuarios a los shards de un ShardedUserDAO según su reparto
+ * Sirve para llevar una tabla única a shards (origen UserDAO) y para cambiar el número de
+ * shards (origen ShardedUserDAO): solo se copian los usuarios cuyo shard de destino es un
+ * UserDAO distinto del que los guarda. La tabla se recorre por páginas de ID, conservando
+ * ID y versión, y el recorrido puede reanudarse desde el último ID procesado; los usuarios
+ * que ya existen en el destino se cuentan y no se sobrescriben. Conviene detener las
+ * escrituras mientras se ejecuta, ya que los cambios en usuarios ya copiados no se trasladan.
+ * Las copias y los borrados de usuarios movidos no se anotan en el registro de cambios de
+ * los shards: el usuario no cambia, y un consumidor de los registros por shard podría
+ * aplicar el alta en el destino antes que la baja en el origen y perder el usuario. Las
+ * copias locales por shard (UserNearCache) deben recargarse después de repartir
+ */
+public class UserResharder {
+
+    /** Usuarios leídos del origen por página */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final UserDAO source;
+    private final ShardedUserDAO target;
+    private final boolean deleteMoved;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * @param source tabla o shards de origen
+     * @param target shards de destino; pueden incluir los mismos UserDAO que el origen
+     * @param deleteMoved true para borrar del origen los usuarios copiados a otro shard
+     */
+    public UserResharder(UserDAO source, ShardedUserDAO target, boolean deleteMoved) {
+        this.source = source;
+        this.target = target;
+        this.deleteMoved = deleteMoved;
+    }
+
+    public void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Recorre todo el origen
+     * @return el resumen de la copia
+     * @throws SQLException si la lectura del origen o una escritura por lotes falla
+     */
+    public Result run() throws SQLException {
+        return run(UserPage.FIRST_PAGE);
+    }
+
+    /**
+     * Recorre el origen a partir de un ID, por ejemplo el getLastId() de una ejecución interrumpida
+     * @param afterId ID tras el que empieza el recorrido
+     * @return el resumen de la copia
+     * @throws SQLException si la lectura del origen o una escritura por lotes falla
+     */
+    public Result run(int afterId) throws SQLException {
+        Result result = new Result(afterId);
+        UserPage page;
+        do {
+            page = source.getUsersPage(result.lastId, pageSize);
+            copyPage(page.getUsers(), result);
+            result.lastId = page.getNextCursor();
+        } while (page.hasMore());
+        return result;
+    }
+
+    private void copyPage(List<User> users, Result result) throws SQLException {
+        if (users.isEmpty()) {
+            return;
+        }
+        Map<UserDAO, List<User>> moves = new IdentityHashMap<>();
+        for (User user : users) {
+            result.scanned++;
+            UserDAO destination = target.shardFor(user.getId());
+            if (destination != sourceShardOf(user.getId())) {
+                moves.computeIfAbsent(destination, shard -> new ArrayList<>()).add(user);
+            }
+        }
+        // Los IDs nuevos deben quedar por encima de los copiados
+        target.getIdGenerator().reserveThrough(users.get(users.size() - 1).getId());
+
+        Map<UserDAO, List<Integer>> copiedBySource = new IdentityHashMap<>();
+        for (Map.Entry<UserDAO, List<User>> move : moves.entrySet()) {
+            UserDAO destination = move.getKey();
+            List<User> batch = move.getValue();
+            BatchResult copy = UserDAO.withoutChangeFeed(() -> destination.createUsers(batch));
+            // Un fallo de unicidad puede ser el propio usuario, copiado por una ejecución
+            // anterior, o un email repetido; solo lo primero cuenta como copiado
+            List<Integer> duplicateIds = new ArrayList<>();
+            for (BatchResult.Failure failure : copy.getFailures()) {
+                String state = failure.getError().getSQLState();
+                if (state != null && state.startsWith("23")) {
+                    duplicateIds.add(batch.get(failure.getIndex()).getId());
+                }
+            }
+            Map<Integer, User> present = duplicateIds.isEmpty()
+                    ? Collections.emptyMap()
+                    : destination.getUsersByIds(duplicateIds);
+
+            for (int i = 0; i < batch.size(); i++) {
+                int id = batch.get(i).getId();
+                if (copy.getRowCount(i) > 0) {
+                    result.copied++;
+                } else if (present.containsKey(id)) {
+                    result.alreadyPresent++;
+                } else {
+                    result.failed++;
+                    continue;
+                }
+                copiedBySource.computeIfAbsent(sourceShardOf(id), shard -> new ArrayList<>()).add(id);
+            }
+            for (BatchResult.Failure failure : copy.getFailures()) {
+                int id = batch.get(failure.getIndex()).getId();
+                if (!present.containsKey(id)) {
+                    System.err.println("Error copiando usuario " + id + ": " + failure.getError().getMessage());
+                }
+            }
+        }
+
+        if (deleteMoved) {
+            for (Map.Entry<UserDAO, List<Integer>> copied : copiedBySource.entrySet()) {
+                int[] ids = copied.getValue().stream().mapToInt(Integer::intValue).toArray();
+                UserDAO shard = copied.getKey();
+                result.deleted += UserDAO.withoutChangeFeed(() -> shard.deleteUsers(ids)).getSuccessCount();
+            }
+        }
+    }
+
+    private UserDAO sourceShardOf(int id) {
+        return source instanceof ShardedUserDAO ? ((ShardedUserDAO) source).shardFor(id) : source;
+    }
+
+    /**
+     * Resumen de una ejecución
+     */
+    public static class Result {
+        private int lastId;
+        private long scanned;
+        private long copied;
+        private long alreadyPresent;
+        private long failed;
+        private long deleted;
+
+        Result(int afterId) {
+            this.lastId = afterId;
+        }
+
+        /**
+         * @return último ID recorrido, desde el que puede reanudarse la copia
+         */
+        public int getLastId() {
+            return lastId;
+        }
+
+        public long getScanned() {
+            return scanned;
+        }
+
+        public long getCopied() {
+            return copied;
+        }
+
+        /**
+         * @return usuarios que ya estaban en su shard de destino, por ejemplo de una ejecución anterior
+         */
+        public long getAlreadyPresent() {
+            return alreadyPresent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "lastId=" + lastId +
+                    ", scanned=" + scanned +
+                    ", copied=" + copied +
+                    ", alreadyPresent=" + alreadyPresent +
+                    ", failed=" + failed +
+                    ", deleted=" + deleted +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Convierte filas de la tabla users en objetos User
+ * Todas las consultas seleccionan las columnas de COLUMNS en ese orden, de modo que
+ * cada valor se lee por su índice sin buscar la columna por nombre en cada fila
+ */
+public final class UserRowMapper {
+
+    /** Lista de columnas que deben seleccionar las consultas que usan este mapper */
+    public static final String COLUMNS = "id, name, email, age, version, updated_at";
+
+    // Índices (base 1) de cada columna dentro de COLUMNS
+    private static final int ID = 1;
+    private static final int NAME = 2;
+    private static final int EMAIL = 3;
+    private static final int AGE = 4;
+    private static final int VERSION = 5;
+    private static final int UPDATED_AT = 6;
+
+    private UserRowMapper() {}
+
+    /**
+     * Lee la fila actual del ResultSet
+     * @param rs un ResultSet posicionado en una fila de una consulta que selecciona COLUMNS
+     * @return el usuario de la fila
+     * @throws SQLException si la lectura falla
+     */
+    public static User map(ResultSet rs) throws SQLException {
+        User user = new User(
+            rs.getInt(ID),
+            rs.getString(NAME),
+            rs.getString(EMAIL),
+            rs.getInt(AGE)
+        );
+        user.setVersion(rs.getInt(VERSION));
+        Timestamp updatedAt = rs.getTimestamp(UPDATED_AT);
+        if (updatedAt != null) {
+            user.setUpdatedAt(updatedAt.toInstant());
+        }
+        return user;
+    }
+}
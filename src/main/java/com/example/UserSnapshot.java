@@ -0,0 +1,445 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Instantánea binaria de la tabla users leída con un fichero mapeado en memoria
+ * El fichero guarda las columnas en arrays de enteros ordenados por ID (IDs, edades, versiones,
+ * posiciones de los textos), una tabla de direccionamiento abierto por email y los nombres y
+ * emails seguidos en UTF-8. Abrirla solo mapea el fichero: las búsquedas leen directamente de
+ * las páginas del fichero, fuera del heap, sin crear objetos por usuario. La cabecera guarda el
+ * updated_at más reciente y la posición en el registro de cambios, desde los que
+ * UserNearCache.load(UserSnapshot) continúa con refresh(). El fichero está limitado a 2 GB
+ */
+public final class UserSnapshot {
+
+    /** Primeros bytes de un fichero de instantánea ("USNP") */
+    public static final int MAGIC = 0x55534E50;
+    /** Versión del formato; un fichero de otra versión no se abre */
+    public static final int FORMAT_VERSION = 1;
+
+    // Cabecera: magic, versión, filas, capacidad de la tabla de emails, watermark (ms desde
+    // 1970), posición en el registro de cambios y bytes de texto; el resto queda reservado
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNT = 8;
+    private static final int EMAIL_CAPACITY = 12;
+    private static final int WATERMARK = 16;
+    private static final int FEED_SEQUENCE = 24;
+    private static final int TEXT_BYTES = 32;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int emailMask;
+    private final Instant watermark;
+    private final long feedSequence;
+    private final int textBytes;
+
+    // Posición de cada columna en el fichero
+    private final int idsOffset;
+    private final int agesOffset;
+    private final int versionsOffset;
+    private final int textStartsOffset;
+    private final int nameLengthsOffset;
+    private final int emailTableOffset;
+    private final int textOffset;
+
+    private UserSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a user snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(COUNT);
+        int emailCapacity = buffer.getInt(EMAIL_CAPACITY);
+        this.emailMask = emailCapacity - 1;
+        this.watermark = Instant.ofEpochMilli(buffer.getLong(WATERMARK));
+        this.feedSequence = buffer.getLong(FEED_SEQUENCE);
+        this.textBytes = buffer.getInt(TEXT_BYTES);
+
+        Layout layout = new Layout(count, emailCapacity, textBytes);
+        if (layout.size != buffer.capacity()) {
+            throw new IOException("Truncated or corrupt snapshot");
+        }
+        this.idsOffset = layout.ids;
+        this.agesOffset = layout.ages;
+        this.versionsOffset = layout.versions;
+        this.textStartsOffset = layout.textStarts;
+        this.nameLengthsOffset = layout.nameLengths;
+        this.emailTableOffset = layout.emailTable;
+        this.textOffset = layout.text;
+    }
+
+    /**
+     * Mapea una instantánea en modo lectura; la memoria mapeada se libera cuando la instancia
+     * deja de usarse
+     * @throws IOException si el fichero no se puede leer o no es una instantánea válida
+     */
+    public static UserSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new UserSnapshot(mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Escribe una instantánea de toda la tabla recorriéndola con streamAllUsers
+     * La posición en el registro de cambios queda a 0
+     * @throws IOException si el fichero no se puede escribir
+     * @throws SQLException si la lectura de la tabla falla
+     */
+    public static void write(UserDAO userDAO, Path file) throws IOException, SQLException {
+        Writer writer = new Writer();
+        Instant newest = Instant.EPOCH;
+        try (Stream<User> users = userDAO.streamAllUsers()) {
+            Iterator<User> it = users.iterator();
+            while (it.hasNext()) {
+                User user = it.next();
+                writer.add(user);
+                if (user.getUpdatedAt() != null && user.getUpdatedAt().isAfter(newest)) {
+                    newest = user.getUpdatedAt();
+                }
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+        writer.write(file, newest, 0);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return el updated_at más reciente de la instantánea, desde el que se piden los cambios posteriores
+     */
+    public Instant getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return última secuencia del registro de cambios reflejada en la instantánea, o 0 si se desconoce
+     */
+    public long getFeedSequence() {
+        return feedSequence;
+    }
+
+    public boolean containsId(int id) {
+        return rowOf(id) >= 0;
+    }
+
+    /**
+     * @return la edad del usuario, o -1 si no está en la instantánea
+     */
+    public int ageOf(int id) {
+        int row = rowOf(id);
+        return row < 0 ? -1 : ageAt(row);
+    }
+
+    /**
+     * @param email el email exacto (distingue mayúsculas y minúsculas)
+     * @return el ID del usuario con ese email, o 0 si no está en la instantánea
+     */
+    public int idForEmail(CharSequence email) {
+        for (int i = Utf8Text.mix(Utf8Text.hash(email)) & emailMask; ; i = (i + 1) & emailMask) {
+            int entry = buffer.getInt(emailTableOffset + i * 4);
+            if (entry == 0) {
+                return 0;
+            }
+            int row = entry - 1;
+            if (Utf8Text.equals(buffer, emailOffset(row), emailLength(row), email)) {
+                return idAt(row);
+            }
+        }
+    }
+
+    /**
+     * Añade el nombre del usuario a un StringBuilder reutilizado por el llamador
+     * @return false si el usuario no está en la instantánea
+     */
+    public boolean appendName(int id, StringBuilder target) {
+        int row = rowOf(id);
+        if (row < 0) {
+            return false;
+        }
+        Utf8Text.append(buffer, nameOffset(row), nameLength(row), target);
+        return true;
+    }
+
+    /**
+     * Añade el email del usuario a un StringBuilder reutilizado por el llamador
+     * @return false si el usuario no está en la instantánea
+     */
+    public boolean appendEmail(int id, StringBuilder target) {
+        int row = rowOf(id);
+        if (row < 0) {
+            return false;
+        }
+        Utf8Text.append(buffer, emailOffset(row), emailLength(row), target);
+        return true;
+    }
+
+    /**
+     * @return el usuario (sin updatedAt), o null si no está en la instantánea
+     */
+    public User getUserById(int id) {
+        int row = rowOf(id);
+        return row < 0 ? null : userAt(row);
+    }
+
+    /**
+     * @return el usuario con ese email exacto (sin updatedAt), o null si no está en la instantánea
+     */
+    public User getUserByEmail(String email) {
+        int id = idForEmail(email);
+        return id == 0 ? null : getUserById(id);
+    }
+
+    /**
+     * Busca la fila de un ID con búsqueda binaria sobre la columna de IDs
+     * @return la fila, o -1 si el ID no está
+     */
+    int rowOf(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = idAt(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Acceso por fila para copiar la instantánea (UserNearCache.load)
+
+    ByteBuffer text() {
+        return buffer;
+    }
+
+    int textBytes() {
+        return textBytes;
+    }
+
+    int idAt(int row) {
+        return buffer.getInt(idsOffset + row * 4);
+    }
+
+    int ageAt(int row) {
+        return buffer.getInt(agesOffset + row * 4);
+    }
+
+    int versionAt(int row) {
+        return buffer.getInt(versionsOffset + row * 4);
+    }
+
+    int nameOffset(int row) {
+        return textOffset + buffer.getInt(textStartsOffset + row * 4);
+    }
+
+    int nameLength(int row) {
+        return buffer.getInt(nameLengthsOffset + row * 4);
+    }
+
+    int emailOffset(int row) {
+        return nameOffset(row) + nameLength(row);
+    }
+
+    int emailLength(int row) {
+        return buffer.getInt(textStartsOffset + (row + 1) * 4) - buffer.getInt(textStartsOffset + row * 4)
+                - nameLength(row);
+    }
+
+    private User userAt(int row) {
+        User user = new User(idAt(row), Utf8Text.toString(buffer, nameOffset(row), nameLength(row)),
+                Utf8Text.toString(buffer, emailOffset(row), emailLength(row)), ageAt(row));
+        user.setVersion(versionAt(row));
+        return user;
+    }
+
+    /**
+     * Posición de cada sección del fichero para un número de filas dado
+     */
+    private static final class Layout {
+        final int ids;
+        final int ages;
+        final int versions;
+        final int textStarts;
+        final int nameLengths;
+        final int emailTable;
+        final int text;
+        final long size;
+
+        Layout(int count, int emailCapacity, long textBytes) throws IOException {
+            long ids = HEADER_SIZE;
+            long ages = ids + 4L * count;
+            long versions = ages + 4L * count;
+            long textStarts = versions + 4L * count;
+            long nameLengths = textStarts + 4L * (count + 1);
+            long emailTable = nameLengths + 4L * count;
+            long text = emailTable + 4L * emailCapacity;
+            this.size = text + textBytes;
+            if (count < 0 || emailCapacity <= 0 || Integer.bitCount(emailCapacity) != 1
+                    || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + count + " users, " + textBytes + " text bytes");
+            }
+            this.ids = (int) ids;
+            this.ages = (int) ages;
+            this.versions = (int) versions;
+            this.textStarts = (int) textStarts;
+            this.nameLengths = (int) nameLengths;
+            this.emailTable = (int) emailTable;
+            this.text = (int) text;
+        }
+    }
+
+    /**
+     * Acumula usuarios en arrays de primitivos y los escribe en el formato de instantánea
+     * Los usuarios pueden añadirse en cualquier orden; al escribir se ordenan por ID
+     */
+    static final class Writer {
+        private int[] ids = new int[1024];
+        private int[] ages = new int[1024];
+        private int[] versions = new int[1024];
+        private int[] textStarts = new int[1025];
+        private int[] nameLengths = new int[1024];
+        private byte[] text = new byte[16 * 1024];
+        private int count;
+        private int textLength;
+
+        void add(User user) {
+            byte[] name = user.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+            add(user.getId(), user.getAge(), user.getVersion(), name, 0, name.length, email, 0, email.length);
+        }
+
+        void add(int id, int age, int version, byte[] name, int nameOffset, int nameLength,
+                 byte[] email, int emailOffset, int emailLength) {
+            if (count == ids.length) {
+                int capacity = count * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+                textStarts = Arrays.copyOf(textStarts, capacity + 1);
+                nameLengths = Arrays.copyOf(nameLengths, capacity);
+            }
+            if (textLength + nameLength + emailLength > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + nameLength + emailLength));
+            }
+            ids[count] = id;
+            ages[count] = age;
+            versions[count] = version;
+            textStarts[count] = textLength;
+            nameLengths[count] = nameLength;
+            System.arraycopy(name, nameOffset, text, textLength, nameLength);
+            System.arraycopy(email, emailOffset, text, textLength + nameLength, emailLength);
+            textLength += nameLength + emailLength;
+            count++;
+        }
+
+        /**
+         * Escribe la instantánea en un fichero temporal y lo mueve sobre file, de modo que
+         * quien abra file nunca vea una instantánea a medio escribir
+         */
+        void write(Path file, Instant watermark, long feedSequence) throws IOException {
+            int[] order = sortedOrder();
+            int emailCapacity = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+            Layout layout = new Layout(count, emailCapacity, textLength);
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.size);
+                ByteBuffer out = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+                int textPosition = 0;
+                for (int row = 0; row < count; row++) {
+                    int i = order[row];
+                    int length = textStarts[i + 1] - textStarts[i];
+                    out.putInt(layout.ids + row * 4, ids[i]);
+                    out.putInt(layout.ages + row * 4, ages[i]);
+                    out.putInt(layout.versions + row * 4, versions[i]);
+                    out.putInt(layout.textStarts + row * 4, textPosition);
+                    out.putInt(layout.nameLengths + row * 4, nameLengths[i]);
+                    out.position(layout.text + textPosition);
+                    out.put(text, textStarts[i], length);
+                    textPosition += length;
+                }
+                out.putInt(layout.textStarts + count * 4, textPosition);
+
+                int mask = emailCapacity - 1;
+                for (int row = 0; row < count; row++) {
+                    int i = order[row];
+                    int emailOffset = layout.text + out.getInt(layout.textStarts + row * 4) + nameLengths[i];
+                    int emailLength = textStarts[i + 1] - textStarts[i] - nameLengths[i];
+                    int slot = Utf8Text.mix(Utf8Text.hash(out, emailOffset, emailLength)) & mask;
+                    while (out.getInt(layout.emailTable + slot * 4) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    out.putInt(layout.emailTable + slot * 4, row + 1);
+                }
+
+                out.putInt(4, FORMAT_VERSION);
+                out.putInt(COUNT, count);
+                out.putInt(EMAIL_CAPACITY, emailCapacity);
+                out.putLong(WATERMARK, watermark.toEpochMilli());
+                out.putLong(FEED_SEQUENCE, feedSequence);
+                out.putInt(TEXT_BYTES, textLength);
+                mapped.force();
+                // El magic se escribe al final: un fichero sin él no se considera una instantánea
+                out.putInt(0, MAGIC);
+                mapped.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * @return las posiciones de los usuarios añadidos ordenadas por ID
+         */
+        private int[] sortedOrder() {
+            textStarts[count] = textLength;
+            int[] order = new int[count];
+            boolean sorted = true;
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+                sorted &= i == 0 || ids[i - 1] < ids[i];
+            }
+            if (!sorted) {
+                // ID en los 32 bits altos y posición en los bajos: ordenar los long ordena por ID
+                long[] keys = new long[count];
+                for (int i = 0; i < count; i++) {
+                    keys[i] = ((long) ids[i] << 32) | i;
+                }
+                Arrays.sort(keys);
+                for (int i = 0; i < count; i++) {
+                    order[i] = (int) keys[i];
+                }
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example;
+
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Modelo de tabla de usuarios que carga las filas por páginas bajo demanda
+ * Solo se consulta la base de datos cuando la vista necesita más filas. La consulta
+ * (PageLoad.fetch) puede ejecutarse fuera del hilo de eventos; el modelo solo se modifica
+ * en él, con nextPage() y apply(). Las filas se mantienen ordenadas por ID, como las devuelve
+ * la paginación keyset, de modo que una fila se localiza por búsqueda binaria y las
+ * modificaciones se aplican fila a fila con putUser() y removeUser() sin recargar la tabla
+ */
+public class UserTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMNS = {"ID", "Nombre", "Email", "Edad"};
+
+    /**
+     * Origen de las páginas de usuarios (por ejemplo UserDAO::getUsersPage)
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        UserPage load(int afterId, int limit) throws SQLException;
+    }
+
+    private final int pageSize;
+    private final List<User> rows = new ArrayList<>();
+    private PageLoader loader;
+    private Predicate<User> filter = user -> true;
+    private int cursor = UserPage.FIRST_PAGE;
+    private boolean hasMore;
+    private PageLoad loading;
+
+    public UserTableModel(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Vacía la tabla y empieza a paginar desde un nuevo origen
+     * @param loader origen de las páginas
+     */
+    public void reset(PageLoader loader) {
+        reset(loader, user -> true);
+    }
+
+    /**
+     * Vacía la tabla y empieza a paginar desde un origen filtrado
+     * @param loader origen de las páginas
+     * @param filter condición que cumplen las filas del origen; putUser la usa para decidir
+     *               si un usuario modificado entra o sale de la tabla
+     */
+    public void reset(PageLoader loader, Predicate<User> filter) {
+        reset(loader, filter, new UserPage(new ArrayList<>(), UserPage.FIRST_PAGE, true));
+    }
+
+    /**
+     * Reemplaza las filas por una primera página ya disponible (por ejemplo, obtenida en
+     * memoria) y continúa paginando desde su cursor
+     * @param loader origen de las páginas siguientes
+     * @param filter condición que cumplen las filas del origen
+     * @param firstPage filas iniciales, cursor y si quedan más páginas
+     */
+    public void reset(PageLoader loader, Predicate<User> filter, UserPage firstPage) {
+        this.loader = loader;
+        this.filter = filter;
+        this.cursor = firstPage.getNextCursor();
+        this.hasMore = firstPage.hasMore();
+        this.loading = null;
+        rows.clear();
+        rows.addAll(firstPage.getUsers());
+        fireTableDataChanged();
+    }
+
+    /**
+     * Carga la página siguiente y la añade al final de la tabla en el hilo actual
+     * @return número de filas añadidas
+     * @throws SQLException si la consulta falla
+     */
+    public int loadNextPage() throws SQLException {
+        PageLoad load = nextPage();
+        if (load == null) {
+            return 0;
+        }
+        try {
+            return apply(load, load.fetch());
+        } finally {
+            finish(load);
+        }
+    }
+
+    /**
+     * Reserva la carga de la página siguiente; solo puede haber una en curso
+     * @return la carga a ejecutar con fetch(), o null si no quedan páginas o ya hay una en curso
+     */
+    public PageLoad nextPage() {
+        if (!hasMore || loader == null || loading != null) {
+            return null;
+        }
+        loading = new PageLoad(loader, cursor, pageSize);
+        return loading;
+    }
+
+    /**
+     * Añade al final de la tabla una página obtenida con fetch()
+     * Si la tabla se reinició mientras tanto, la página se descarta
+     * @return número de filas añadidas
+     */
+    public int apply(PageLoad load, UserPage page) {
+        if (load != loading) {
+            return 0;
+        }
+        loading = null;
+        cursor = page.getNextCursor();
+        hasMore = page.hasMore();
+
+        List<User> users = page.getUsers();
+        if (!users.isEmpty()) {
+            int first = rows.size();
+            rows.addAll(users);
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+        return users.size();
+    }
+
+    /**
+     * Libera la reserva de una carga que falló o se canceló, para poder reintentarla
+     */
+    public void finish(PageLoad load) {
+        if (load == loading) {
+            loading = null;
+        }
+    }
+
+    /**
+     * @return true si hay una página cargándose
+     */
+    public boolean isLoading() {
+        return loading != null;
+    }
+
+    /**
+     * @return true si quedan páginas por cargar
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public User getUserAt(int row) {
+        return rows.get(row);
+    }
+
+    /**
+     * Busca la fila de un usuario
+     * @return la fila, o -(punto de inserción + 1) si el usuario no está en la tabla
+     */
+    public int indexOf(int id) {
+        int low = 0;
+        int high = rows.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = rows.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Aplica a la tabla un usuario creado o actualizado
+     * Si ya está se reemplaza su fila (o se quita si deja de cumplir el filtro); si no está
+     * se inserta en su posición, salvo que pertenezca a una página aún no cargada
+     * @param user el usuario tal como quedó en la base de datos
+     * @return la fila que ocupa el usuario, o -1 si no está en la tabla
+     */
+    public int putUser(User user) {
+        int row = indexOf(user.getId());
+        boolean matches = filter.test(user);
+        if (row >= 0) {
+            if (matches) {
+                rows.set(row, user);
+                fireTableRowsUpdated(row, row);
+                return row;
+            }
+            rows.remove(row);
+            fireTableRowsDeleted(row, row);
+            return -1;
+        }
+        // Con páginas pendientes, un ID posterior al cursor llegará con su página
+        if (!matches || (hasMore && user.getId() > cursor)) {
+            return -1;
+        }
+        row = -(row + 1);
+        rows.add(row, user);
+        fireTableRowsInserted(row, row);
+        return row;
+    }
+
+    /**
+     * Quita de la tabla un usuario eliminado
+     * @param id el ID del usuario
+     * @return la fila que ocupaba, o -1 si no estaba en la tabla
+     */
+    public int removeUser(int id) {
+        int row = indexOf(id);
+        if (row < 0) {
+            return -1;
+        }
+        rows.remove(row);
+        fireTableRowsDeleted(row, row);
+        return row;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == 3 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        User user = rows.get(row);
+        switch (column) {
+            case 0:
+                return user.getId();
+            case 1:
+                return user.getName();
+            case 2:
+                return user.getEmail();
+            case 3:
+                return user.getAge();
+            default:
+                throw new IllegalArgumentException("Columna inválida: " + column);
+        }
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    /**
+     * Carga pendiente de una página: guarda el origen y el cursor vigentes al reservarla
+     */
+    public static final class PageLoad {
+        private final PageLoader loader;
+        private final int afterId;
+        private final int limit;
+
+        private PageLoad(PageLoader loader, int afterId, int limit) {
+            this.loader = loader;
+            this.afterId = afterId;
+            this.limit = limit;
+        }
+
+        /**
+         * Consulta la página; no modifica el modelo y puede llamarse desde cualquier hilo
+         * @throws SQLException si la consulta falla
+         */
+        public UserPage fetch() throws SQLException {
+            return loader.load(afterId, limit);
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Importación y exportación masiva de usuarios en CSV o NDJSON (un objeto JSON por línea)
+ * La importación lee el fichero por bloques de líneas que unos hilos de trabajo validan e
+ * insertan con createUsers; la cola entre lector y trabajadores está acotada, así que la
+ * memoria no depende del tamaño del fichero. La exportación recorre streamAllUsers
+ */
+public class UserTransfer {
+
+    private static final String CSV_HEADER = "id,name,email,age";
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final UserDAO userDAO;
+    private final int workers;
+    private final int chunkSize;
+
+    /**
+     * Formato del fichero, deducido de su extensión
+     */
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Unsupported file extension: " + file);
+        }
+    }
+
+    /**
+     * Crea una transferencia con tantos hilos de trabajo como conexiones tiene el pool del DAO
+     * @param userDAO el DAO que inserta y recorre los usuarios
+     */
+    public UserTransfer(UserDAO userDAO) {
+        this(userDAO, userDAO.getPoolMaxSize(), userDAO.getBatchSize());
+    }
+
+    /**
+     * @param userDAO el DAO que inserta y recorre los usuarios
+     * @param workers hilos que validan e insertan en paralelo
+     * @param chunkSize líneas que procesa cada hilo por inserción en lote
+     */
+    public UserTransfer(UserDAO userDAO, int workers, int chunkSize) {
+        if (workers <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("workers and chunkSize must be greater than 0");
+        }
+        this.userDAO = userDAO;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Importa los usuarios del fichero; los IDs del fichero se ignoran y se generan de nuevo
+     * @param file fichero .csv o .ndjson
+     * @return filas importadas, rechazadas y rendimiento
+     * @throws IOException si el fichero no se puede leer
+     * @throws SQLException si la inserción falla
+     */
+    public Result importFrom(Path file) throws IOException, SQLException {
+        Format format = Format.of(file);
+        long start = System.nanoTime();
+        AtomicLong imported = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(workers * 2);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (Chunk chunk = queue.take(); chunk != Chunk.END; chunk = queue.take()) {
+                        if (failure.get() == null) {
+                            importChunk(chunk, format, imported, rejected);
+                        }
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    // Sigue consumiendo para que el lector no quede bloqueado
+                    drain(queue);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "user-import-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(
+                     Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), 1 << 16)) {
+            long lineNumber = 0;
+            Chunk chunk = new Chunk(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null && failure.get() == null) {
+                lineNumber++;
+                long firstLine = lineNumber;
+                if (format == Format.CSV && hasOddQuotes(line)) {
+                    // Un campo entre comillas puede contener saltos de línea: la fila sigue
+                    // en las líneas siguientes hasta que se cierren las comillas
+                    StringBuilder record = new StringBuilder(line);
+                    boolean open = true;
+                    String next;
+                    while (open && (next = reader.readLine()) != null) {
+                        record.append('\n').append(next);
+                        lineNumber++;
+                        open = !hasOddQuotes(next);
+                    }
+                    line = record.toString();
+                }
+                if (line.isEmpty() || (format == Format.CSV && firstLine == 1 && line.startsWith(CSV_HEADER))) {
+                    continue;
+                }
+                chunk.add(firstLine, line);
+                if (chunk.size() == chunkSize) {
+                    queue.put(chunk);
+                    chunk = new Chunk(chunkSize);
+                }
+            }
+            if (chunk.size() > 0) {
+                queue.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } finally {
+            endWorkers(queue, threads);
+        }
+
+        Exception error = failure.get();
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        }
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+        return new Result(imported.get(), rejected.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Exporta todos los usuarios recorriendo la tabla con un cursor
+     * @param file fichero .csv o .ndjson de destino; se sobrescribe si existe
+     * @return filas exportadas y rendimiento
+     * @throws IOException si el fichero no se puede escribir
+     * @throws SQLException si la lectura falla
+     */
+    public Result exportTo(Path file) throws IOException, SQLException {
+        Format format = Format.of(file);
+        long start = System.nanoTime();
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedWriter writer = new BufferedWriter(
+                     Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), 1 << 16);
+             Stream<User> users = userDAO.streamAllUsers()) {
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            StringBuilder line = new StringBuilder(128);
+            for (User user : (Iterable<User>) users::iterator) {
+                line.setLength(0);
+                if (format == Format.CSV) {
+                    writeCsv(line, user);
+                } else {
+                    writeJson(line, user);
+                }
+                writer.append(line).write('\n');
+                rows++;
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+        return new Result(rows, 0, System.nanoTime() - start);
+    }
+
+    private void importChunk(Chunk chunk, Format format, AtomicLong imported, AtomicLong rejected)
+            throws SQLException {
+        List<User> users = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            try {
+                users.add(format == Format.CSV ? parseCsv(chunk.lines.get(i)) : parseJson(chunk.lines.get(i)));
+            } catch (IllegalArgumentException e) {
+                reject(rejected, chunk.lineNumbers[i], e.getMessage());
+            }
+        }
+        if (users.isEmpty()) {
+            return;
+        }
+        BatchResult result = userDAO.createUsers(users);
+        imported.addAndGet(result.getSuccessCount());
+        for (BatchResult.Failure f : result.getFailures()) {
+            reject(rejected, -1, users.get(f.getIndex()).getEmail() + ": " + f.getError().getMessage());
+        }
+    }
+
+    private static void reject(AtomicLong rejected, long lineNumber, String message) {
+        if (rejected.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+            System.err.println("Fila rechazada" + (lineNumber > 0 ? " (línea " + lineNumber + ")" : "")
+                    + ": " + message);
+        }
+    }
+
+    private static void drain(BlockingQueue<Chunk> queue) {
+        try {
+            while (queue.take() != Chunk.END) {
+                // descartar
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Envía una marca de fin a cada hilo de trabajo y espera a que terminen
+     */
+    private static void endWorkers(BlockingQueue<Chunk> queue, List<Thread> threads) {
+        boolean interrupted = false;
+        for (int i = 0; i < threads.size(); i++) {
+            try {
+                queue.put(Chunk.END);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                i--;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true si el texto tiene un número impar de comillas, es decir, si abre o cierra
+     *         un campo entre comillas; las comillas escapadas ("") no cambian la paridad
+     */
+    private static boolean hasOddQuotes(String record) {
+        boolean open = false;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Convierte una fila CSV (id,name,email,age) en un usuario; admite campos entre comillas,
+     * que pueden contener comas, comillas dobles ("") y saltos de línea
+     */
+    static User parseCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("Expected 4 fields but found " + fields.size());
+        }
+        return toUser(fields.get(1), fields.get(2), fields.get(3).trim());
+    }
+
+    /**
+     * Convierte un objeto JSON plano {"id":..,"name":..,"email":..,"age":..} en un usuario
+     */
+    static User parseJson(String line) {
+        String name = null;
+        String email = null;
+        String age = null;
+        JsonCursor cursor = new JsonCursor(line);
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String key = cursor.readString();
+                cursor.expect(':');
+                String value = cursor.readValue();
+                switch (key) {
+                    case "name":
+                        name = value;
+                        break;
+                    case "email":
+                        email = value;
+                        break;
+                    case "age":
+                        age = value;
+                        break;
+                    default:
+                        break;
+                }
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        return toUser(name, email, age);
+    }
+
+    private static User toUser(String name, String email, String age) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Missing name");
+        }
+        if (email == null || email.indexOf('@') < 0) {
+            throw new IllegalArgumentException("Invalid email: " + email);
+        }
+        try {
+            int value = Integer.parseInt(age);
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative age: " + age);
+            }
+            return new User(name, email, value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid age: " + age);
+        }
+    }
+
+    static void writeCsv(StringBuilder out, User user) {
+        out.append(user.getId()).append(',');
+        appendCsvField(out, user.getName());
+        out.append(',');
+        appendCsvField(out, user.getEmail());
+        out.append(',').append(user.getAge());
+    }
+
+    private static void appendCsvField(StringBuilder out, String value) {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            // Los saltos de línea se conservan dentro de las comillas (RFC 4180)
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    static void writeJson(StringBuilder out, User user) {
+        out.append("{\"id\":").append(user.getId()).append(",\"name\":");
+        appendJsonString(out, user.getName());
+        out.append(",\"email\":");
+        appendJsonString(out, user.getEmail());
+        out.append(",\"age\":").append(user.getAge()).append('}');
+    }
+
+    private static void appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Resultado de una importación o exportación
+     */
+    public static class Result {
+        private final long rows;
+        private final long rejected;
+        private final long elapsedNanos;
+
+        public Result(long rows, long rejected, long elapsedNanos) {
+            this.rows = rows;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rows * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d filas (%d rechazadas) en %.2f s, %.0f filas/s",
+                    rows, rejected, elapsedNanos / 1e9, getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Bloque de líneas leídas, con su número de línea para informar de rechazos
+     */
+    private static final class Chunk {
+        static final Chunk END = new Chunk(0);
+
+        final List<String> lines;
+        final long[] lineNumbers;
+
+        Chunk(int capacity) {
+            this.lines = new ArrayList<>(capacity);
+            this.lineNumbers = new long[capacity];
+        }
+
+        void add(long lineNumber, String line) {
+            lineNumbers[lines.size()] = lineNumber;
+            lines.add(line);
+        }
+
+        int size() {
+            return lines.size();
+        }
+    }
+
+    /**
+     * Lector mínimo de objetos JSON planos con valores de texto o numéricos
+     */
+    private static final class JsonCursor {
+        private final String text;
+        private int pos;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + pos);
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        String readValue() {
+            skipWhitespace();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (pos < text.length() && ",} \t".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Expected value at " + start);
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 'r':
+                        out.append('\r');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'b':
+                        out.append('\b');
+                        break;
+                    case 'f':
+                        out.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Invalid unicode escape at " + pos);
+                        }
+                        out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        out.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
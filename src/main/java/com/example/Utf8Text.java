@@ -0,0 +1,121 @@
+package com.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Operaciones sobre textos UTF-8 guardados dentro de un ByteBuffer (en memoria o mapeado de un fichero)
+ * Comparan, calculan el hash y copian a un StringBuilder decodificando en el sitio, sin crear
+ * un String ni reservar memoria. Solo usan lecturas absolutas, así que varios hilos pueden
+ * leer el mismo buffer a la vez
+ */
+final class Utf8Text {
+
+    private Utf8Text() {}
+
+    /**
+     * @return el mismo valor que String.hashCode() del texto guardado
+     */
+    static int hash(ByteBuffer text, int offset, int length) {
+        int hash = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; ) {
+            long decoded = decode(text, i);
+            int codePoint = (int) (decoded >>> 3);
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                hash = 31 * hash + Character.highSurrogate(codePoint);
+                hash = 31 * hash + Character.lowSurrogate(codePoint);
+            } else {
+                hash = 31 * hash + codePoint;
+            }
+            i += (int) (decoded & 7);
+        }
+        return hash;
+    }
+
+    /**
+     * @return el mismo valor que String.hashCode() del texto
+     */
+    static int hash(CharSequence value) {
+        if (value instanceof String) {
+            return value.hashCode();
+        }
+        int hash = 0;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash;
+    }
+
+    static boolean equals(ByteBuffer text, int offset, int length, CharSequence value) {
+        int valueLength = value.length();
+        int j = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; ) {
+            long decoded = decode(text, i);
+            int codePoint = (int) (decoded >>> 3);
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (j + 1 >= valueLength || value.charAt(j) != Character.highSurrogate(codePoint)
+                        || value.charAt(j + 1) != Character.lowSurrogate(codePoint)) {
+                    return false;
+                }
+                j += 2;
+            } else {
+                if (j >= valueLength || value.charAt(j) != codePoint) {
+                    return false;
+                }
+                j++;
+            }
+            i += (int) (decoded & 7);
+        }
+        return j == valueLength;
+    }
+
+    static void append(ByteBuffer text, int offset, int length, StringBuilder target) {
+        int end = offset + length;
+        for (int i = offset; i < end; ) {
+            long decoded = decode(text, i);
+            target.appendCodePoint((int) (decoded >>> 3));
+            i += (int) (decoded & 7);
+        }
+    }
+
+    static String toString(ByteBuffer text, int offset, int length) {
+        if (text.hasArray()) {
+            return new String(text.array(), text.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = text.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Mezcla los bits de un hash para repartir las claves en una tabla de direccionamiento abierto
+     */
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Decodifica el carácter UTF-8 que empieza en i
+     * @return el code point desplazado 3 bits a la izquierda y su longitud en bytes en los 3 bits bajos
+     */
+    private static long decode(ByteBuffer text, int i) {
+        int b = text.get(i);
+        if (b >= 0) {
+            return ((long) b << 3) | 1;
+        }
+        if ((b & 0xE0) == 0xC0) {
+            return ((long) (((b & 0x1F) << 6) | (text.get(i + 1) & 0x3F)) << 3) | 2;
+        }
+        if ((b & 0xF0) == 0xE0) {
+            return ((long) (((b & 0x0F) << 12) | ((text.get(i + 1) & 0x3F) << 6)
+                    | (text.get(i + 2) & 0x3F)) << 3) | 3;
+        }
+        return ((long) (((b & 0x07) << 18) | ((text.get(i + 1) & 0x3F) << 12)
+                | ((text.get(i + 2) & 0x3F) << 6) | (text.get(i + 3) & 0x3F)) << 3) | 4;
+    }
+}
@@ -0,0 +1,449 @@
+package com.example;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Escritura diferida (write-behind) de usuarios sobre UserDAO
+ * Las modificaciones se encolan y se agrupan por ID: la última actualización gana y una
+ * eliminación reemplaza las actualizaciones pendientes. La cola se vuelca en lotes cuando
+ * alcanza flushSize operaciones o cada flushIntervalMillis. Cada volcado aplica primero las
+ * eliminaciones, que nunca chocan con el email único de otra fila, y después las creaciones y
+ * actualizaciones en el orden en que se encolaron. Si la cola está llena, quien
+ * escribe espera a que se vacíe. Las lecturas de UserDAO no ven los cambios aún no volcados.
+ * Si un volcado falla por completo (por ejemplo, se pierde la conexión), sus operaciones
+ * vuelven a la cola y el hilo de fondo lo reintenta con espera creciente; los fallos de una
+ * fila concreta (email repetido, conflicto de versión) no se reintentan y se cuentan en
+ * getFailedCount. Las actualizaciones con versión se comprueban como en updateUsers, pero
+ * la versión incrementada queda en la copia encolada y no en el objeto del llamador: para
+ * actualizar varias veces el mismo usuario conviene encolarlo sin versión (User.UNVERSIONED)
+ * o volver a leerlo antes de cada cambio
+ */
+public class WriteBehindUserWriter implements AutoCloseable {
+
+    private final UserDAO userDAO;
+    private final int capacity;
+    private final int flushSize;
+    private final long flushIntervalMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushRequested = lock.newCondition();
+    // Orden de llegada de cada ID; el valor es la operación pendiente (copia del usuario o eliminación).
+    // Las creaciones aún no tienen ID y se guardan con claves negativas que no se repiten
+    private LinkedHashMap<Integer, User> pendingWrites = new LinkedHashMap<>();
+    private int nextCreateKey = -1;
+    private boolean closed;
+
+    // Evita que un flush() manual y el hilo de fondo vuelquen a la vez
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread flusher;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong conflictCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    // Volcados fallidos seguidos; el hilo de fondo espera más entre reintentos
+    private int consecutiveFailures;
+
+    /** Espera máxima entre reintentos de un volcado fallido */
+    private static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+    /** Marca de eliminación pendiente dentro de pendingWrites */
+    private static final User DELETE = new User();
+
+    /**
+     * Crea un escritor diferido
+     * @param userDAO el DAO que ejecuta los volcados
+     * @param capacity número máximo de operaciones pendientes antes de bloquear a quien escribe
+     * @param flushSize número de operaciones pendientes que dispara un volcado
+     * @param flushIntervalMillis tiempo máximo que una operación permanece en cola
+     */
+    public WriteBehindUserWriter(UserDAO userDAO, int capacity, int flushSize, long flushIntervalMillis) {
+        if (capacity <= 0 || flushSize <= 0 || flushSize > capacity) {
+            throw new IllegalArgumentException("Required: 0 < flushSize <= capacity");
+        }
+        this.userDAO = userDAO;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Encola la creación de un usuario; el ID se asigna al volcarse
+     * @param user el usuario a crear
+     * @throws SQLException si el usuario no es válido o el escritor está cerrado
+     */
+    public void createUser(User user) throws SQLException {
+        if (user.getName() == null || user.getEmail() == null) {
+            throw new SQLException("User name and email cannot be null");
+        }
+        lock.lock();
+        try {
+            awaitCapacity();
+            pendingWrites.put(nextCreateKey--, user);
+            submittedCount.incrementAndGet();
+            signalIfFull();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encola una copia de la actualización de un usuario, reemplazando la pendiente del mismo ID
+     * Si el usuario lleva versión, su versión no avanza al volcarse: una segunda actualización
+     * del mismo objeto se contaría como conflicto (getConflictCount)
+     * @param user el usuario con la información actualizada
+     * @throws SQLException si el escritor está cerrado
+     */
+    public void updateUser(User user) throws SQLException {
+        enqueue(user.getId(), new User(user));
+    }
+
+    /**
+     * Encola la eliminación de un usuario, descartando sus actualizaciones pendientes
+     * @param id el ID del usuario a eliminar
+     * @throws SQLException si el escritor está cerrado
+     */
+    public void deleteUser(int id) throws SQLException {
+        enqueue(id, DELETE);
+    }
+
+    /**
+     * Vuelca todas las operaciones pendientes y espera a que terminen
+     * @throws SQLException si el volcado falla; las operaciones no escritas vuelven a la cola
+     */
+    public void flush() throws SQLException {
+        flushLock.lock();
+        try {
+            LinkedHashMap<Integer, User> writes;
+            lock.lock();
+            try {
+                writes = pendingWrites;
+                pendingWrites = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            write(writes);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Detiene el volcado periódico y vuelca lo pendiente; las escrituras posteriores fallan
+     * @throws SQLException si el último volcado falla; las operaciones no escritas se pierden
+     *                      salvo que se vuelva a llamar a flush()
+     */
+    @Override
+    public void close() throws SQLException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushRequested.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * @return operaciones pendientes de volcar
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pendingWrites.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return operaciones absorbidas por otra pendiente del mismo ID
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return operaciones enviadas a la base de datos
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return operaciones descartadas por un error de su fila, incluidos los conflictos
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return actualizaciones con versión que no escribieron ninguna fila: otro proceso
+     *         modificó el usuario (o lo eliminó) después de leerlo
+     */
+    public long getConflictCount() {
+        return conflictCount.get();
+    }
+
+    /**
+     * @return operaciones devueltas a la cola por un volcado fallido
+     */
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return operaciones recibidas por cada operación escrita; 1 significa que nada se agrupó
+     */
+    public double getCoalescingRatio() {
+        long written = writtenCount.get();
+        return written == 0 ? 0.0 : (double) submittedCount.get() / written;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindUserWriter{" +
+                "pending=" + getPendingCount() +
+                ", submitted=" + submittedCount.get() +
+                ", coalesced=" + coalescedCount.get() +
+                ", written=" + writtenCount.get() +
+                ", failed=" + failedCount.get() +
+                ", conflicts=" + conflictCount.get() +
+                ", retried=" + retriedCount.get() +
+                ", flushes=" + flushCount.get() +
+                '}';
+    }
+
+    private void enqueue(int id, User operation) throws SQLException {
+        lock.lock();
+        try {
+            if (pendingWrites.containsKey(id)) {
+                ensureOpen();
+                User previous = pendingWrites.get(id);
+                // Una eliminación pendiente prevalece: actualizar después no tendría efecto
+                if (previous != DELETE) {
+                    pendingWrites.put(id, operation);
+                }
+                coalescedCount.incrementAndGet();
+            } else {
+                awaitCapacity();
+                pendingWrites.put(id, operation);
+            }
+            submittedCount.incrementAndGet();
+            signalIfFull();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitCapacity() throws SQLException {
+        ensureOpen();
+        while (pendingWrites.size() >= capacity) {
+            flushRequested.signal();
+            try {
+                notFull.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for write-behind capacity", e);
+            }
+            ensureOpen();
+        }
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Write-behind writer is closed");
+        }
+    }
+
+    private void signalIfFull() {
+        if (pendingWrites.size() >= flushSize) {
+            flushRequested.signal();
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (consecutiveFailures > 0) {
+                    // Tras un fallo se espera aunque la cola esté llena, para no insistir sin pausa
+                    flushRequested.await(retryDelayMillis(), TimeUnit.MILLISECONDS);
+                } else if (pendingWrites.size() < flushSize) {
+                    flushRequested.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+                if (closed) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+                consecutiveFailures = 0;
+            } catch (SQLException | RuntimeException e) {
+                // Las operaciones ya están otra vez en la cola; el hilo sigue vivo para reintentarlas
+                consecutiveFailures++;
+                System.err.println("Error volcando escrituras diferidas (reintento en "
+                        + retryDelayMillis() + " ms): " + e.getMessage());
+            }
+        }
+    }
+
+    private long retryDelayMillis() {
+        long delay = Math.max(100, flushIntervalMillis) << Math.min(consecutiveFailures - 1, 16);
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    private void write(LinkedHashMap<Integer, User> writes) throws SQLException {
+        if (writes.isEmpty()) {
+            return;
+        }
+        // Las eliminaciones van primero; el resto se agrupa en tramos seguidos del mismo tipo
+        // para conservar el orden de llegada entre creaciones y actualizaciones
+        List<Integer> deletes = new ArrayList<>();
+        List<LinkedHashMap<Integer, User>> runs = new ArrayList<>();
+        for (Map.Entry<Integer, User> entry : writes.entrySet()) {
+            if (entry.getValue() == DELETE) {
+                deletes.add(entry.getKey());
+                continue;
+            }
+            LinkedHashMap<Integer, User> run = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (run == null || isCreate(run.keySet().iterator().next()) != isCreate(entry.getKey())) {
+                run = new LinkedHashMap<>();
+                runs.add(run);
+            }
+            run.put(entry.getKey(), entry.getValue());
+        }
+
+        flushCount.incrementAndGet();
+        // Cada paso es una transacción: si falla, ese paso y los siguientes vuelven a la cola
+        boolean deletesWritten = false;
+        int runsWritten = 0;
+        try {
+            if (!deletes.isEmpty()) {
+                int[] ids = new int[deletes.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = deletes.get(i);
+                }
+                record(userDAO.deleteUsers(ids), null);
+            }
+            deletesWritten = true;
+            for (LinkedHashMap<Integer, User> run : runs) {
+                List<User> users = new ArrayList<>(run.values());
+                if (isCreate(run.keySet().iterator().next())) {
+                    record(userDAO.createUsers(users), null);
+                } else {
+                    record(userDAO.updateUsers(users), users);
+                }
+                runsWritten++;
+            }
+        } catch (SQLException | RuntimeException e) {
+            LinkedHashMap<Integer, User> retryWrites = new LinkedHashMap<>();
+            if (!deletesWritten) {
+                for (Integer id : deletes) {
+                    retryWrites.put(id, DELETE);
+                }
+            }
+            for (int i = runsWritten; i < runs.size(); i++) {
+                retryWrites.putAll(runs.get(i));
+            }
+            requeue(retryWrites);
+            throw e;
+        }
+    }
+
+    private static boolean isCreate(int key) {
+        return key < 0;
+    }
+
+    /**
+     * Devuelve a la cola las operaciones de un volcado fallido, por delante de las encoladas
+     * después; si entretanto llegó otra operación del mismo ID, gana la más reciente salvo
+     * que la devuelta sea una eliminación
+     */
+    private void requeue(LinkedHashMap<Integer, User> writes) {
+        retriedCount.addAndGet(writes.size());
+        lock.lock();
+        try {
+            for (Map.Entry<Integer, User> newer : pendingWrites.entrySet()) {
+                User previous = writes.get(newer.getKey());
+                if (previous != null) {
+                    coalescedCount.incrementAndGet();
+                    if (previous == DELETE) {
+                        continue;
+                    }
+                    writes.remove(newer.getKey());
+                }
+                writes.put(newer.getKey(), newer.getValue());
+            }
+            pendingWrites = writes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param versionedUpdates las actualizaciones del lote, para contar como conflicto las que
+     *                         llevaban versión y no escribieron ninguna fila; null en otros pasos
+     */
+    private void record(BatchResult result, List<User> versionedUpdates) {
+        writtenCount.addAndGet(result.size());
+        for (BatchResult.Failure failure : result.getFailures()) {
+            failedCount.incrementAndGet();
+            System.err.println("Error en escritura diferida: " + failure.getError().getMessage());
+        }
+        if (versionedUpdates == null) {
+            return;
+        }
+        for (int i = 0; i < versionedUpdates.size(); i++) {
+            User user = versionedUpdates.get(i);
+            if (result.getRowCount(i) == 0 && user.getVersion() != User.UNVERSIONED) {
+                conflictCount.incrementAndGet();
+                failedCount.incrementAndGet();
+                System.err.println("Conflicto en escritura diferida: el usuario " + user.getId()
+                        + " cambió o se eliminó después de leer la versión " + user.getVersion());
+            }
+        }
+    }
+}
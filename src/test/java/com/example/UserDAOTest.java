@@ -1,10 +1,34 @@
 package com.example;
 
 import org.junit.*;
+import org.junit.rules.TestName;
 import static org.junit.Assert.*;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.management.ObjectName;
+import javax.swing.event.TableModelEvent;
 
 /**
  * Unit tests for UserDAO class and DatabaseConnection
@@ -14,8 +38,23 @@ public class UserDAOTest {
     private UserDAO userDAO;
     private Connection connection;
     
+    @Rule
+    public TestName testName = new TestName();
+    
+    /**
+     * Marca los tests que solo usan bases H2 en memoria propias: no abren ni limpian la base
+     * de datos compartida, así que se ejecutan sin servidor MySQL
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    private @interface EmbeddedOnly {
+    }
+    
     @Before
     public void setUp() throws Exception {
+        if (isEmbeddedOnly()) {
+            return;
+        }
         userDAO = new UserDAO();
         connection = DatabaseConnection.getConnection();
         
@@ -25,6 +64,9 @@ public class UserDAOTest {
     
     @After
     public void tearDown() throws Exception {
+        if (isEmbeddedOnly()) {
+            return;
+        }
         // Limpiar la tabla después de cada test
         cleanDatabase();
         
@@ -33,6 +75,10 @@ public class UserDAOTest {
         }
     }
     
+    private boolean isEmbeddedOnly() throws NoSuchMethodException {
+        return getClass().getMethod(testName.getMethodName()).isAnnotationPresent(EmbeddedOnly.class);
+    }
+    
     /**
      * Limpia la tabla de usuarios antes y después de los tests
      */
@@ -325,4 +371,1356 @@ public class UserDAOTest {
         assertTrue("La conexión debe estar cerrada después de closeConnection", conn.isClosed());
         System.out.println("[TEST 10] ✅ ÉXITO - Conexión a base de datos funcionando correctamente");
     }
+    
+    /**
+     * Test operaciones por lotes: crear, actualizar y eliminar varios usuarios
+     */
+    @Test
+    public void testBatchOperations() throws SQLException {
+        System.out.println("\n[TEST 11] testBatchOperations - Iniciando...");
+        // Arrange - El segundo usuario repite email y el tercero no tiene nombre
+        userDAO.setBatchSize(2);
+        List<User> users = Arrays.asList(
+            new User("Alice", "alice@example.com", 28),
+            new User("Alice Bis", "alice@example.com", 29),
+            new User(null, "noname@example.com", 30),
+            new User("Bob", "bob@example.com", 32),
+            new User("Charlie", "charlie@example.com", 45));
+        
+        // Act
+        BatchResult created = userDAO.createUsers(users);
+        
+        // Assert - Los fallos se informan por fila sin descartar el resto del lote
+        assertEquals("Deben crearse 3 usuarios", 3, created.getSuccessCount());
+        assertEquals("Deben fallar 2 usuarios", 2, created.getFailures().size());
+        assertEquals(1, created.getFailures().get(0).getIndex());
+        assertEquals(2, created.getFailures().get(1).getIndex());
+        assertTrue("Debe asignarse el ID generado", users.get(3).getId() > 0);
+        assertEquals("Bob", userDAO.getUserById(users.get(3).getId()).getName());
+        assertEquals(3, userDAO.getAllUsers().size());
+        
+        // Act - Actualizar y eliminar en lote
+        users.get(0).setAge(40);
+        users.get(4).setAge(50);
+        BatchResult updated = userDAO.updateUsers(Arrays.asList(users.get(0), users.get(4)));
+        BatchResult deleted = userDAO.deleteUsers(new int[] {users.get(3).getId(), 999});
+        
+        // Assert
+        assertEquals(2, updated.getSuccessCount());
+        assertEquals(40, userDAO.getUserById(users.get(0).getId()).getAge());
+        assertEquals(1, deleted.getSuccessCount());
+        assertEquals("El ID inexistente no afecta filas", 0, deleted.getRowCount(1));
+        assertNull(userDAO.getUserById(users.get(3).getId()));
+        System.out.println("[TEST 11] ✅ ÉXITO - Operaciones por lotes correctas");
+    }
+    
+    /**
+     * Test recorrer todos los usuarios con un Stream y liberar la conexión al cerrarlo
+     */
+    @Test
+    public void testStreamAllUsers() throws SQLException {
+        System.out.println("\n[TEST 12] testStreamAllUsers - Iniciando...");
+        // Arrange
+        userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        userDAO.createUser(new User("Bob", "bob@example.com", 32));
+        userDAO.createUser(new User("Charlie", "charlie@example.com", 45));
+        int activeBefore = DatabaseConnection.getPoolStats().getActive();
+        
+        // Act
+        List<String> names;
+        try (Stream<User> users = userDAO.streamAllUsers()) {
+            names = users.map(User::getName).collect(Collectors.toList());
+        }
+        
+        // Assert
+        assertEquals(Arrays.asList("Alice", "Bob", "Charlie"), names);
+        assertEquals("La conexión debe volver al pool al cerrar el Stream",
+            activeBefore, DatabaseConnection.getPoolStats().getActive());
+        System.out.println("[TEST 12] ✅ ÉXITO - Stream de usuarios recorrido y cerrado correctamente");
+    }
+    
+    /**
+     * Test paginación keyset de usuarios y de búsqueda por nombre
+     */
+    @Test
+    public void testKeysetPagination() throws SQLException {
+        System.out.println("\n[TEST 13] testKeysetPagination - Iniciando...");
+        // Arrange
+        for (int i = 1; i <= 5; i++) {
+            userDAO.createUser(new User("User " + i, "user" + i + "@example.com", 20 + i));
+        }
+        
+        // Act
+        UserPage first = userDAO.getUsersPage(UserPage.FIRST_PAGE, 2);
+        UserPage second = userDAO.getUsersPage(first.getNextCursor(), 2);
+        UserPage last = userDAO.getUsersPage(second.getNextCursor(), 2);
+        UserPage search = userDAO.findUsersByNamePage("User", first.getNextCursor(), 10);
+        userDAO.createUser(new User("Promo 100%", "promo@example.com", 40));
+        UserPage percent = userDAO.findUsersByNamePage("0%", UserPage.FIRST_PAGE, 10);
+        UserPage underscore = userDAO.findUsersByNamePage("r_1", UserPage.FIRST_PAGE, 10);
+        
+        // Assert
+        assertEquals(2, first.getUsers().size());
+        assertTrue("Debe haber más páginas", first.hasMore());
+        assertEquals("User 3", second.getUsers().get(0).getName());
+        assertEquals(1, last.getUsers().size());
+        assertFalse("La última página no debe tener continuación", last.hasMore());
+        assertEquals("La búsqueda continúa tras el cursor", 3, search.getUsers().size());
+        assertFalse(search.hasMore());
+        assertEquals("% se busca literalmente", 1, percent.getUsers().size());
+        assertTrue("_ se busca literalmente", underscore.getUsers().isEmpty());
+        System.out.println("[TEST 13] ✅ ÉXITO - Paginación keyset correcta");
+    }
+    
+    /**
+     * Test caché de getUserById: aciertos, fallos e invalidación en escrituras
+     */
+    @Test
+    public void testUserCache() throws SQLException {
+        System.out.println("\n[TEST 14] testUserCache - Iniciando...");
+        // Arrange
+        UserCache cache = new UserCache(2, 60000);
+        UserDAO cachedDAO = new UserDAO(cache);
+        User alice = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        User bob = userDAO.createUser(new User("Bob", "bob@example.com", 32));
+        User charlie = userDAO.createUser(new User("Charlie", "charlie@example.com", 45));
+        
+        // Act - Primera lectura falla, la segunda acierta
+        cachedDAO.getUserById(alice.getId());
+        User cached = cachedDAO.getUserById(alice.getId());
+        cached.setAge(99);
+        
+        // Assert
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals("Modificar la copia no altera la caché", 28, cachedDAO.getUserById(alice.getId()).getAge());
+        
+        // Act - Escrituras a través del DAO refrescan o invalidan la caché
+        cached.setAge(29);
+        cachedDAO.updateUser(cached);
+        assertEquals(29, cachedDAO.getUserById(alice.getId()).getAge());
+        cachedDAO.deleteUser(alice.getId());
+        assertNull(cachedDAO.getUserById(alice.getId()));
+        
+        // Act - Superar el tamaño máximo expulsa la entrada menos usada
+        cachedDAO.getUserById(bob.getId());
+        cachedDAO.getUserById(charlie.getId());
+        cachedDAO.getUserById(bob.getId());
+        cachedDAO.createUser(new User("Dave", "dave@example.com", 50));
+        
+        // Assert
+        assertEquals(2, cache.size());
+        assertTrue("Debe registrarse al menos una expulsión", cache.getEvictionCount() > 0);
+        System.out.println("[TEST 14] ✅ ÉXITO - Caché de usuarios correcta: " + cache);
+    }
+    
+    /**
+     * Test búsqueda por nombre resuelta con el índice en memoria
+     */
+    @Test
+    public void testSearchWithNameIndex() throws SQLException {
+        System.out.println("\n[TEST 15] testSearchWithNameIndex - Iniciando...");
+        // Arrange
+        userDAO.createUser(new User("John Doe", "john@example.com", 30));
+        userDAO.createUser(new User("Jane Smith", "jane@example.com", 25));
+        UserNameIndex index = userDAO.buildNameIndex();
+        
+        // Act - Escrituras posteriores mantienen el índice al día
+        User adams = userDAO.createUser(new User("John Adams", "jadams@example.com", 35));
+        User bob = userDAO.createUser(new User("Bob Johnson", "bob@example.com", 28));
+        bob.setName("Bob Smith");
+        userDAO.updateUser(bob);
+        userDAO.deleteUser(adams.getId());
+        
+        // Las escrituras confirmadas durante la carga prevalecen sobre las filas leídas
+        UserNameIndex loading = new UserNameIndex();
+        loading.beginLoad();
+        loading.remove(7);
+        loading.put(8, "Nuevo");
+        loading.load(7, "Borrado");
+        loading.load(8, "Antiguo");
+        loading.load(9, "Leído");
+        loading.endLoad();
+        
+        // Assert
+        assertEquals(2, loading.size());
+        assertEquals(0, loading.search("antiguo").length);
+        assertEquals(1, loading.search("nuevo").length);
+        assertTrue("Un nombre nulo no coincide con nadie", userDAO.findUsersByName(null).isEmpty());
+        assertEquals(3, index.size());
+        assertEquals(1, userDAO.findUsersByName("John").size());
+        assertEquals(2, userDAO.findUsersByName("Smith").size());
+        assertEquals("Términos cortos recorren el índice", 3, userDAO.findUsersByName("h").size());
+        assertTrue(userDAO.findUsersByName("Adams").isEmpty());
+        assertEquals("El índice ignora mayúsculas y acentos", 1, index.search("jóhn").length);
+        System.out.println("[TEST 15] ✅ ÉXITO - Búsqueda con índice de nombres correcta");
+    }
+    
+    /**
+     * Test fachada asíncrona: muchas consultas concurrentes sin superar el límite de concurrencia,
+     * que se toma del pool del DAO envuelto
+     */
+    @Test
+    public void testAsyncUserDAO() throws Exception {
+        System.out.println("\n[TEST 16] testAsyncUserDAO - Iniciando...");
+        // Arrange
+        User alice = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        
+        try (AsyncUserDAO asyncDAO = new AsyncUserDAO(userDAO)) {
+            // Act
+            List<CompletableFuture<User>> lookups = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                lookups.add(asyncDAO.getUserById(alice.getId()));
+            }
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).get();
+            
+            // Assert
+            for (CompletableFuture<User> lookup : lookups) {
+                assertEquals("Alice", lookup.get().getName());
+            }
+            assertTrue("El límite de concurrencia es el tamaño del pool",
+                asyncDAO.getMaxConcurrency() <= DatabaseConnection.getPoolMaxSize());
+            assertTrue(asyncDAO.deleteUser(alice.getId()).get());
+            assertNull(asyncDAO.getUserById(alice.getId()).get());
+        }
+        
+        // Act - El límite sale del pool del propio DAO, no del pool global
+        String url = "jdbc:h2:mem:async_limit;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        try (ReplicaRouter three = new ReplicaRouter(new ConnectionPool(url, "sa", "", 3, 1000, 60000));
+             ReplicaRouter two = new ReplicaRouter(new ConnectionPool(url, "sa", "", 2, 1000, 60000));
+             ShardedUserDAO sharded = new ShardedUserDAO(
+                     Arrays.asList(new UserDAO(null, three), new UserDAO(null, two)),
+                     new UserIdGenerator(three.getPrimary(), 10));
+             AsyncUserDAO routedAsync = new AsyncUserDAO(new UserDAO(null, three));
+             AsyncUserDAO shardedAsync = new AsyncUserDAO(sharded)) {
+            
+            // Assert
+            assertEquals("Con un enrutado propio se usa su pool principal", 3, routedAsync.getMaxConcurrency());
+            assertEquals("Con shards se usa el pool más pequeño", 2, shardedAsync.getMaxConcurrency());
+        }
+        System.out.println("[TEST 16] ✅ ÉXITO - Operaciones asíncronas completadas correctamente");
+    }
+    
+    /**
+     * Test lectura de varios usuarios por ID, consultando solo los que no están en caché
+     */
+    @Test
+    public void testGetUsersByIds() throws SQLException {
+        System.out.println("\n[TEST 17] testGetUsersByIds - Iniciando...");
+        // Arrange
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(userDAO.createUser(new User("User " + i, "user" + i + "@example.com", 20 + i)).getId());
+        }
+        ids.add(999);
+        UserCache cache = new UserCache(100, 60000);
+        UserDAO cachedDAO = new UserDAO(cache);
+        cachedDAO.getUserById(ids.get(0));
+        
+        // Act
+        Map<Integer, User> users = cachedDAO.getUsersByIds(ids);
+        
+        // Assert
+        assertEquals("Los IDs inexistentes no aparecen en el resultado", 20, users.size());
+        assertEquals("User 5", users.get(ids.get(5)).getName());
+        assertFalse(users.containsKey(999));
+        assertEquals("Solo el usuario leído antes debe acertar en caché", 1, cache.getHitCount());
+        assertEquals("Los usuarios leídos quedan en caché", 20, cache.size());
+        System.out.println("[TEST 17] ✅ ÉXITO - Lectura múltiple por ID correcta");
+    }
+    
+    /**
+     * Test reutilización de sentencias preparadas entre préstamos de la misma conexión y
+     * restablecimiento del estado que el llamador deja en la sentencia al devolverla
+     */
+    @Test
+    public void testStatementCache() throws SQLException {
+        System.out.println("\n[TEST 18] testStatementCache - Iniciando...");
+        // Arrange
+        User user = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        userDAO.getUserById(user.getId());
+        long hitsBefore = DatabaseConnection.getPoolStats().getStatementCacheHits();
+        
+        // Act
+        for (int i = 0; i < 10; i++) {
+            userDAO.getUserById(user.getId());
+        }
+        
+        userDAO.createUser(new User("Bob", "bob@example.com", 35));
+        String sql = "SELECT id FROM users ORDER BY id";
+        ResultSet leftOpen;
+        long hitsBeforeReuse;
+        int maxRows;
+        int fetchSize;
+        int queryTimeout;
+        int rows = 0;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            PreparedStatement first = conn.prepareStatement(sql);
+            first.setMaxRows(1);
+            first.setFetchSize(1);
+            first.setQueryTimeout(5);
+            leftOpen = first.executeQuery();
+            first.close();
+            hitsBeforeReuse = DatabaseConnection.getPoolStats().getStatementCacheHits();
+            try (PreparedStatement second = conn.prepareStatement(sql);
+                 ResultSet rs = second.executeQuery()) {
+                maxRows = second.getMaxRows();
+                fetchSize = second.getFetchSize();
+                queryTimeout = second.getQueryTimeout();
+                while (rs.next()) {
+                    rows++;
+                }
+            }
+        }
+        
+        // Assert
+        PoolStats stats = DatabaseConnection.getPoolStats();
+        assertTrue("Las lecturas repetidas deben reutilizar la sentencia preparada",
+            stats.getStatementCacheHits() - hitsBefore >= 10);
+        assertEquals("La sentencia devuelta se reutiliza", hitsBeforeReuse + 1, stats.getStatementCacheHits());
+        assertTrue("Devolver la sentencia cierra su resultado abierto", leftOpen.isClosed());
+        assertEquals("maxRows vuelve a su valor inicial", 0, maxRows);
+        assertNotEquals(1, fetchSize);
+        assertEquals(0, queryTimeout);
+        assertEquals(2, rows);
+        System.out.println("[TEST 18] ✅ ÉXITO - Sentencias preparadas reutilizadas: " + stats);
+    }
+    
+    /**
+     * Test escritura diferida: agrupación por ID, volcado en lote, eliminaciones antes que las
+     * creaciones que reutilizan su email y reintento de volcados fallidos
+     */
+    @Test
+    public void testWriteBehindCoalescing() throws Exception {
+        System.out.println("\n[TEST 19] testWriteBehindCoalescing - Iniciando...");
+        // Arrange
+        User kept = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        User removed = userDAO.createUser(new User("Bob", "bob@example.com", 35));
+        
+        // Act
+        try (WriteBehindUserWriter writer = new WriteBehindUserWriter(userDAO, 100, 100, 60000)) {
+            for (int age = 30; age < 40; age++) {
+                writer.updateUser(new User(kept.getId(), "Alice", "alice@example.com", age));
+            }
+            writer.updateUser(new User(removed.getId(), "Bob", "bob@example.com", 50));
+            writer.deleteUser(removed.getId());
+            writer.createUser(new User("Charlie", "charlie@example.com", 42));
+            
+            assertTrue("Los cambios no se escriben hasta el volcado", userDAO.findUsersByName("Charlie").isEmpty());
+            writer.flush();
+            
+            // Assert
+            assertEquals(13, writer.getSubmittedCount());
+            assertEquals("Solo se escribe la última operación de cada ID", 3, writer.getWrittenCount());
+            assertEquals(0, writer.getPendingCount());
+            assertEquals(0, writer.getFailedCount());
+        }
+        assertEquals("La última actualización gana", 39, userDAO.getUserById(kept.getId()).getAge());
+        assertNull("La eliminación prevalece sobre las actualizaciones", userDAO.getUserById(removed.getId()));
+        assertEquals(1, userDAO.findUsersByName("Charlie").size());
+        
+        // Act - Las eliminaciones se aplican antes que las creaciones y actualizaciones encoladas después
+        User dave = userDAO.createUser(new User("Dave", "dave@example.com", 40));
+        User erin = userDAO.createUser(new User("Erin", "erin@example.com", 41));
+        User frank = userDAO.createUser(new User("Frank", "frank@example.com", 42));
+        long reuseFailures;
+        try (WriteBehindUserWriter reusing = new WriteBehindUserWriter(userDAO, 100, 100, 60000)) {
+            reusing.deleteUser(dave.getId());
+            reusing.createUser(new User("Dave", "dave@example.com", 45));
+            reusing.deleteUser(erin.getId());
+            reusing.updateUser(new User(frank.getId(), "Frank", "erin@example.com", 42));
+            reusing.flush();
+            reuseFailures = reusing.getFailedCount();
+        }
+        User recreated = userDAO.getUserByEmail("dave@example.com");
+        User renamed = userDAO.getUserByEmail("erin@example.com");
+        
+        // Assert
+        assertEquals("Eliminar y volver a crear con el mismo email no falla", 0, reuseFailures);
+        assertNotNull(recreated);
+        assertNotEquals(dave.getId(), recreated.getId());
+        assertEquals(45, recreated.getAge());
+        assertEquals(frank.getId(), renamed.getId());
+        
+        // Act - Un volcado que falla devuelve sus operaciones a la cola
+        AtomicReference<Exception> nextFailure = new AtomicReference<>(new SQLException("Conexión perdida"));
+        UserDAO flaky = new UserDAO() {
+            @Override
+            public BatchResult updateUsers(Collection<User> users) throws SQLException {
+                Exception failure = nextFailure.getAndSet(null);
+                if (failure instanceof SQLException) {
+                    throw (SQLException) failure;
+                }
+                if (failure != null) {
+                    throw (RuntimeException) failure;
+                }
+                return super.updateUsers(users);
+            }
+        };
+        int pendingAfterFailure;
+        try (WriteBehindUserWriter retrying = new WriteBehindUserWriter(flaky, 100, 100, 60000)) {
+            retrying.updateUser(new User(kept.getId(), "Alice", "alice@example.com", 60));
+            try {
+                retrying.flush();
+                fail("El fallo del volcado debe llegar a quien llama a flush()");
+            } catch (SQLException expected) {
+                // La actualización sigue pendiente
+            }
+            pendingAfterFailure = retrying.getPendingCount();
+        }
+        int ageAfterClose = userDAO.getUserById(kept.getId()).getAge();
+        
+        // Act - El hilo de fondo sobrevive a una RuntimeException y reintenta
+        nextFailure.set(new IllegalStateException("Fallo inesperado"));
+        long retried;
+        try (WriteBehindUserWriter background = new WriteBehindUserWriter(flaky, 100, 1, 10)) {
+            background.updateUser(new User(kept.getId(), "Alice", "alice@example.com", 70));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (background.getWrittenCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            retried = background.getRetriedCount();
+        }
+        
+        // Assert
+        assertEquals(1, pendingAfterFailure);
+        assertEquals("close() vuelca la actualización devuelta a la cola", 60, ageAfterClose);
+        assertEquals(1, retried);
+        assertEquals(70, userDAO.getUserById(kept.getId()).getAge());
+        System.out.println("[TEST 19] ✅ ÉXITO - Escrituras diferidas agrupadas correctamente");
+    }
+    
+    /**
+     * Test exportación e importación masiva en CSV y NDJSON
+     */
+    @Test
+    public void testExportImportRoundTrip() throws Exception {
+        System.out.println("\n[TEST 20] testExportImportRoundTrip - Iniciando...");
+        // Arrange
+        userDAO.createUser(new User("Alice\nLiddell", "alice@example.com", 28));
+        userDAO.createUser(new User("García, \"Bob\"", "bob@example.com", 35));
+        UserTransfer transfer = new UserTransfer(userDAO, 2, 1);
+        Path dir = Files.createTempDirectory("user-transfer");
+        Path csv = dir.resolve("users.csv");
+        Path ndjson = dir.resolve("users.ndjson");
+        
+        try {
+            // Act
+            UserTransfer.Result exportedCsv = transfer.exportTo(csv);
+            UserTransfer.Result exportedJson = transfer.exportTo(ndjson);
+            Files.write(csv, "0,Sin email,,30\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            userDAO.deleteUsers(userDAO.getAllUsers().stream().mapToInt(User::getId).toArray());
+            UserTransfer.Result importedCsv = transfer.importFrom(csv);
+            List<User> fromCsv = userDAO.findUsersByName("Bob");
+            List<User> multiLine = userDAO.findUsersByName("Liddell");
+            userDAO.deleteUsers(userDAO.getAllUsers().stream().mapToInt(User::getId).toArray());
+            UserTransfer.Result importedJson = transfer.importFrom(ndjson);
+            List<User> fromJson = userDAO.findUsersByName("Bob");
+            
+            // Assert
+            assertEquals(2, exportedCsv.getRows());
+            assertEquals(2, exportedJson.getRows());
+            assertEquals(2, importedCsv.getRows());
+            assertEquals("La fila sin email se rechaza", 1, importedCsv.getRejected());
+            assertEquals(2, importedJson.getRows());
+            assertEquals(0, importedJson.getRejected());
+            assertEquals("Las comillas y comas se conservan", "García, \"Bob\"", fromCsv.get(0).getName());
+            assertEquals("García, \"Bob\"", fromJson.get(0).getName());
+            assertEquals("Los saltos de línea se conservan", "Alice\nLiddell", multiLine.get(0).getName());
+            assertEquals(2, userDAO.getAllUsers().size());
+            System.out.println("[TEST 20] ✅ ÉXITO - Exportación " + exportedCsv + ", importación " + importedCsv);
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(ndjson);
+            Files.deleteIfExists(dir);
+        }
+    }
+    
+    /**
+     * Test cancelación de consultas y descarte de páginas obsoletas en el modelo de tabla
+     */
+    @Test
+    public void testQueryCancellation() throws SQLException {
+        System.out.println("\n[TEST 21] testQueryCancellation - Iniciando...");
+        // Arrange
+        userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        QueryCancellation query = new QueryCancellation();
+        UserTableModel model = new UserTableModel(10);
+        model.reset((afterId, limit) -> userDAO.getUsersPage(afterId, limit, query));
+        UserTableModel.PageLoad stale = model.nextPage();
+        
+        // Act
+        query.cancel();
+        SQLException cancelled = null;
+        try {
+            stale.fetch();
+        } catch (SQLException e) {
+            cancelled = e;
+        }
+        UserPage page = userDAO.getUsersPage(UserPage.FIRST_PAGE, 10, new QueryCancellation());
+        model.reset(userDAO::getUsersPage);
+        int staleRows = model.apply(stale, page);
+        int loadedRows = model.loadNextPage();
+        
+        // Assert
+        assertNotNull("La consulta cancelada debe fallar", cancelled);
+        assertTrue(QueryCancellation.isCancellation(cancelled));
+        assertEquals("Una página de una carga anterior al reinicio se descarta", 0, staleRows);
+        assertEquals(1, loadedRows);
+        assertEquals(1, model.getRowCount());
+        System.out.println("[TEST 21] ✅ ÉXITO - Consulta cancelada: " + cancelled.getMessage());
+    }
+    
+    /**
+     * Test actualización fila a fila del modelo de tabla tras crear, actualizar y eliminar
+     */
+    @Test
+    public void testTableModelDeltas() throws SQLException {
+        System.out.println("\n[TEST 22] testTableModelDeltas - Iniciando...");
+        // Arrange
+        User alice = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        User bob = userDAO.createUser(new User("Bob", "bob@example.com", 35));
+        UserTableModel model = new UserTableModel(10);
+        model.reset(userDAO::getUsersPage);
+        model.loadNextPage();
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+        
+        // Act
+        alice.setAge(29);
+        userDAO.updateUser(alice);
+        int updatedRow = model.putUser(alice);
+        User charlie = userDAO.createUser(new User("Charlie", "charlie@example.com", 42));
+        int insertedRow = model.putUser(charlie);
+        userDAO.deleteUser(bob.getId());
+        int removedRow = model.removeUser(bob.getId());
+        
+        // Assert
+        assertEquals(0, updatedRow);
+        assertEquals(2, insertedRow);
+        assertEquals(1, removedRow);
+        assertEquals(2, model.getRowCount());
+        assertEquals(29, model.getValueAt(0, 3));
+        assertEquals("Charlie", model.getUserAt(1).getName());
+        assertEquals("Cada cambio emite un único evento de una fila", 3, events.size());
+        assertEquals(TableModelEvent.UPDATE, events.get(0).getType());
+        assertEquals(TableModelEvent.INSERT, events.get(1).getType());
+        assertEquals(TableModelEvent.DELETE, events.get(2).getType());
+        for (TableModelEvent event : events) {
+            assertEquals(event.getFirstRow(), event.getLastRow());
+        }
+        System.out.println("[TEST 22] ✅ ÉXITO - Cambios aplicados fila a fila sin recargar la tabla");
+    }
+    
+    /**
+     * Test búsqueda en memoria sobre los usuarios cargados con consulta solo de los que faltan
+     */
+    @Test
+    public void testSearchLoadedUsers() throws SQLException {
+        System.out.println("\n[TEST 23] testSearchLoadedUsers - Iniciando...");
+        // Arrange
+        userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        userDAO.createUser(new User("Bob", "bob@example.com", 35));
+        userDAO.createUser(new User("Álvaro", "alvaro@example.com", 40));
+        userDAO.createUser(new User("Malia", "malia@example.com", 22));
+        LoadedUserIndex loaded = new LoadedUserIndex();
+        loaded.addPage(userDAO.getUsersPage(UserPage.FIRST_PAGE, 3));
+        UserTableModel model = new UserTableModel(10);
+        
+        // Act
+        UserPage local = loaded.search("AL");
+        model.reset((afterId, limit) -> userDAO.findUsersByNamePage("al", afterId, limit),
+            user -> UserNameIndex.fold(user.getName()).contains("al"), local);
+        int rowsBeforeQuery = model.getRowCount();
+        int fetched = model.loadNextPage();
+        
+        // Assert
+        assertEquals(3, loaded.size());
+        assertFalse(loaded.isComplete());
+        assertEquals("Alice y Álvaro se encuentran sin consultar", 2, rowsBeforeQuery);
+        assertEquals("Solo se consultan los usuarios posteriores al último cargado", 1, fetched);
+        assertEquals("Malia", model.getUserAt(2).getName());
+        assertFalse(model.hasMore());
+        System.out.println("[TEST 23] ✅ ÉXITO - Búsqueda resuelta en memoria y completada con la base de datos");
+    }
+    
+    /**
+     * Test métricas por operación, errores por SQLState, JMX y exportación
+     */
+    @Test
+    public void testMeteredUserDAO() throws Exception {
+        System.out.println("\n[TEST 24] testMeteredUserDAO - Iniciando...");
+        // Arrange
+        UserDAOMetrics metrics = new UserDAOMetrics(0);
+        MeteredUserDAO meteredDAO = new MeteredUserDAO(metrics);
+        List<String> exported = new ArrayList<>();
+        
+        try {
+            // Act
+            User user = meteredDAO.createUser(new User("Alice", "alice@example.com", 28));
+            meteredDAO.getUserById(user.getId());
+            meteredDAO.getUserById(999);
+            try {
+                meteredDAO.createUser(new User("Bob", "alice@example.com", 35));
+            } catch (SQLException e) {
+                // Email duplicado: se cuenta como error
+            }
+            meteredDAO.getAllUsers();
+            metrics.registerMBeans("test");
+            Object jmxCount = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("com.example:type=UserDAO,name=\"test\",operation=getUserById"), "Count");
+            metrics.export((operations, errors) -> operations.forEach(op -> exported.add(op.getName())));
+            
+            // Assert
+            OperationMetrics getById = metrics.operation("getUserById");
+            assertEquals(2, getById.getCount());
+            assertEquals("Solo una lectura devolvió fila", 1, getById.getRowCount());
+            assertTrue(getById.getLatency().getPercentileNanos(99) > 0);
+            assertEquals(2, metrics.operation("createUser").getCount());
+            assertEquals(1, metrics.operation("createUser").getErrorCount());
+            assertEquals(1, metrics.getErrorCountsBySqlState().values().stream().mapToLong(Long::longValue).sum());
+            assertEquals(1, metrics.operation("getAllUsers").getRowCount());
+            assertEquals(2L, jmxCount);
+            assertTrue(exported.contains("getUserById"));
+            System.out.println("[TEST 24] ✅ ÉXITO - Métricas: " + getById + ", errores " + metrics.getErrorCountsBySqlState());
+        } finally {
+            metrics.close();
+        }
+    }
+    
+    /**
+     * Test bloqueo optimista: conflicto de versiones y reintento de la actualización
+     */
+    @Test
+    public void testOptimisticLocking() throws SQLException {
+        System.out.println("\n[TEST 25] testOptimisticLocking - Iniciando...");
+        // Arrange
+        User created = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        User first = userDAO.getUserById(created.getId());
+        User second = userDAO.getUserById(created.getId());
+        
+        // Act
+        first.setAge(29);
+        boolean firstUpdated = userDAO.updateUser(first);
+        second.setAge(30);
+        OptimisticLockException conflict = null;
+        try {
+            userDAO.updateUser(second);
+        } catch (OptimisticLockException e) {
+            conflict = e;
+        }
+        User retried = userDAO.updateWithRetry(created.getId(), user -> user.setAge(user.getAge() + 1), 3);
+        boolean blind = userDAO.updateUser(new User(created.getId(), "Alice", "alice@example.com", 40));
+        User storedBeforeWriter = userDAO.getUserById(created.getId());
+        
+        // La escritura diferida no descarta en silencio una versión obsoleta
+        long writerConflicts;
+        try (WriteBehindUserWriter writer = new WriteBehindUserWriter(userDAO, 10, 10, 60000)) {
+            User stale = new User(first);
+            stale.setAge(50);
+            writer.updateUser(stale);
+            writer.flush();
+            writerConflicts = writer.getConflictCount();
+        }
+        
+        // Assert
+        assertEquals(0, created.getVersion());
+        assertTrue(firstUpdated);
+        assertEquals("La versión avanza con cada escritura", 1, first.getVersion());
+        assertNotNull("La segunda escritura con la versión antigua debe fallar", conflict);
+        assertEquals(OptimisticLockException.SQL_STATE, conflict.getSQLState());
+        assertEquals(30, retried.getAge());
+        assertEquals(2, retried.getVersion());
+        assertTrue("Sin versión la actualización no se comprueba", blind);
+        assertEquals(40, storedBeforeWriter.getAge());
+        assertEquals(3, storedBeforeWriter.getVersion());
+        assertEquals("La versión obsoleta se cuenta como conflicto", 1, writerConflicts);
+        assertEquals(40, userDAO.getUserById(created.getId()).getAge());
+        assertFalse(userDAO.updateUser(new User(999, "Nadie", "nadie@example.com", 1)));
+        System.out.println("[TEST 25] ✅ ÉXITO - Conflicto detectado: " + conflict.getMessage());
+    }
+    
+    /**
+     * Test case 26: Test que las lecturas se reparten entre réplicas y las escrituras van al principal
+     * El principal y las réplicas son bases H2 en memoria; las réplicas tienen datos propios,
+     * como réplicas con retraso
+     */
+    @Test
+    @EmbeddedOnly
+    public void testReadReplicaRouting() throws SQLException {
+        System.out.println("\n[TEST 26] testReadReplicaRouting - Iniciando...");
+        // Arrange
+        String[] replicaUrls = {
+            "jdbc:h2:mem:replica_a;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+            "jdbc:h2:mem:replica_b;MODE=MySQL;DATABASE_TO_LOWER=TRUE"
+        };
+        String primaryUrl = "jdbc:h2:mem:replica_primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        List<Connection> keepAlive = new ArrayList<>();
+        try {
+            Connection primary = openEmbeddedDatabase(primaryUrl);
+            keepAlive.add(primary);
+            for (int i = 0; i < replicaUrls.length; i++) {
+                Connection replica = openEmbeddedDatabase(replicaUrls[i]);
+                keepAlive.add(replica);
+                try (Statement stmt = replica.createStatement()) {
+                    stmt.execute("INSERT INTO users (id, name, email, age) VALUES (" + (1000 + i)
+                            + ", 'Replica " + i + "', 'r" + i + "@example.com', 30)");
+                }
+            }
+            
+            try (ReplicaRouter router = newRouter(primaryUrl, replicaUrls, ReplicaRouter.Strategy.ROUND_ROBIN, 60000);
+                 ReplicaRouter leastLoaded = newRouter(primaryUrl, replicaUrls, ReplicaRouter.Strategy.LEAST_LOADED, 0);
+                 ReplicaRouter cachedRouter = newRouter(primaryUrl, replicaUrls, ReplicaRouter.Strategy.ROUND_ROBIN, 0)) {
+                UserDAO routedDAO = new UserDAO(null, router);
+                
+                // Act
+                String firstRead = routedDAO.getAllUsers().get(0).getName();
+                String secondRead = routedDAO.getAllUsers().get(0).getName();
+                User created = routedDAO.createUser(new User("Alice", "alice@example.com", 28));
+                User readOwnWrite = routedDAO.getUserById(created.getId());
+                router.clearSticky();
+                User fromReplica = routedDAO.getUserById(created.getId());
+                
+                UserDAO leastLoadedDAO = new UserDAO(null, leastLoaded);
+                List<String> leastLoadedReads = new ArrayList<>();
+                // La réplica 0 queda ocupada con una conexión prestada mientras se lee
+                Connection busy = leastLoaded.getReplicas().get(0).getConnection();
+                try {
+                    for (int i = 0; i < 3; i++) {
+                        leastLoadedReads.add(leastLoadedDAO.getAllUsers().get(0).getName());
+                    }
+                } finally {
+                    busy.close();
+                }
+                
+                // La fila 1000 solo existe en una réplica, como una fila ya eliminada en el principal
+                UserCache cache = new UserCache(10, 60000);
+                UserDAO cachedDAO = new UserDAO(cache, cachedRouter);
+                User cachedMiss = cachedDAO.getUserById(1000);
+                Map<Integer, User> cachedMisses = cachedDAO.getUsersByIds(Arrays.asList(1000, 1001));
+                User replicaByEmail = cachedDAO.getUserByEmail("r0@example.com");
+                
+                // Assert
+                assertEquals("Replica 0", firstRead);
+                assertEquals("Replica 1", secondRead);
+                assertTrue("La escritura debe ir al principal", exists(primary, created.getId()));
+                assertNotNull("Tras escribir, el hilo debe leer del principal", readOwnWrite);
+                assertNull("Sin la marca de escritura la lectura va a una réplica sin la fila", fromReplica);
+                assertEquals(1, router.getPrimaryReadCount());
+                assertEquals(2, router.getReplicaReadCount(0));
+                assertEquals(1, router.getReplicaReadCount(1));
+                assertEquals("Con una réplica ocupada se lee de la otra",
+                        Arrays.asList("Replica 1", "Replica 1", "Replica 1"), leastLoadedReads);
+                assertNull("Con caché, los fallos se leen del principal", cachedMiss);
+                assertTrue(cachedMisses.isEmpty());
+                assertNotNull("Las búsquedas por email siguen leyendo de las réplicas", replicaByEmail);
+                assertEquals("Una lectura de réplica no rellena la caché", 0, cache.size());
+                System.out.println("[TEST 26] ✅ ÉXITO - Lecturas por réplica: " + router.getReplicaReadCount(0)
+                        + "/" + router.getReplicaReadCount(1) + ", principal: " + router.getPrimaryReadCount());
+            }
+        } finally {
+            for (Connection replica : keepAlive) {
+                replica.close();
+            }
+        }
+    }
+    
+    private static ReplicaRouter newRouter(String primaryUrl, String[] replicaUrls,
+                                           ReplicaRouter.Strategy strategy, long readYourWritesMillis) {
+        ConnectionPool primary = new ConnectionPool(primaryUrl, "sa", "", 2, 5000, 60000);
+        List<ConnectionPool> replicas = new ArrayList<>();
+        for (String replicaUrl : replicaUrls) {
+            replicas.add(new ConnectionPool(replicaUrl, "sa", "", 2, 5000, 60000));
+        }
+        return new ReplicaRouter(primary, replicas, strategy, readYourWritesMillis);
+    }
+    
+    private static boolean exists(Connection conn, int id) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM users WHERE id = ?")) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    /**
+     * Test case 27: Test que ShardedUserDAO reparte usuarios entre varias bases de datos
+     * con IDs globales, consulta todos los shards en paralelo y se puede volver a repartir
+     */
+    @Test
+    @EmbeddedOnly
+    public void testShardedUserDAO() throws SQLException {
+        System.out.println("\n[TEST 27] testShardedUserDAO - Iniciando...");
+        // Arrange
+        List<Connection> keepAlive = new ArrayList<>();
+        List<ReplicaRouter> routers = new ArrayList<>();
+        try {
+            List<UserDAO> shardDAOs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String url = "jdbc:h2:mem:shard_" + i + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+                keepAlive.add(openEmbeddedDatabase(url));
+                ReplicaRouter router = new ReplicaRouter(new ConnectionPool(url, "sa", "", 4, 5000, 60000));
+                routers.add(router);
+                shardDAOs.add(new UserDAO(null, router));
+            }
+            UserIdGenerator ids = new UserIdGenerator(routers.get(0).getPrimary(), 10);
+            
+            try (ShardedUserDAO threeShards = new ShardedUserDAO(shardDAOs.subList(0, 3), ids);
+                 ShardedUserDAO fourShards = new ShardedUserDAO(shardDAOs, ids)) {
+                List<User> users = new ArrayList<>();
+                for (int i = 0; i < 40; i++) {
+                    users.add(new User((i % 2 == 0 ? "Alice " : "Bob ") + i, "user" + i + "@example.com", 20 + i));
+                }
+                
+                // Act
+                BatchResult created = threeShards.createUsers(users);
+                User single = threeShards.createUser(new User("Carol", "carol@example.com", 33));
+                List<User> all = threeShards.getAllUsers();
+                List<User> paged = new ArrayList<>();
+                UserPage page = threeShards.getUsersPage(UserPage.FIRST_PAGE, 7);
+                paged.addAll(page.getUsers());
+                while (page.hasMore()) {
+                    page = threeShards.getUsersPage(page.getNextCursor(), 7);
+                    paged.addAll(page.getUsers());
+                }
+                List<User> alices = threeShards.findUsersByName("Alice");
+                single.setAge(34);
+                boolean updated = threeShards.updateUser(single);
+                User reread = threeShards.getUserById(single.getId());
+                
+                fourShards.setChangeFeedEnabled(true);
+                UserResharder resharder = new UserResharder(threeShards, fourShards, true);
+                resharder.setPageSize(16);
+                UserResharder.Result reshard = resharder.run();
+                long recordedMoves = 0;
+                for (UserDAO shard : shardDAOs) {
+                    recordedMoves += shard.getLastChangeSequence();
+                }
+                
+                // Assert
+                assertEquals(40, created.getSuccessCount());
+                assertEquals(41, all.size());
+                assertEquals("Los IDs son únicos entre shards", 41,
+                        all.stream().mapToInt(User::getId).distinct().count());
+                for (int i = 1; i < all.size(); i++) {
+                    assertTrue("getAllUsers mezcla los shards por ID", all.get(i - 1).getId() < all.get(i).getId());
+                }
+                for (int shard = 0; shard < 3; shard++) {
+                    assertFalse("Todos los shards reciben usuarios", shardDAOs.get(shard).getAllUsers().isEmpty());
+                }
+                assertEquals(all.stream().map(User::getId).collect(Collectors.toList()),
+                        paged.stream().map(User::getId).collect(Collectors.toList()));
+                assertEquals(20, alices.size());
+                assertTrue(updated);
+                assertEquals(34, reread.getAge());
+                
+                assertEquals(41, reshard.getScanned());
+                assertEquals(reshard.getCopied(), reshard.getDeleted());
+                assertEquals("Solo se mueven los usuarios del nuevo shard",
+                        reshard.getCopied(), shardDAOs.get(3).getAllUsers().size());
+                assertEquals(41, fourShards.getAllUsers().size());
+                assertEquals("Los movimientos entre shards no se registran como cambios", 0, recordedMoves);
+                for (User user : fourShards.getAllUsers()) {
+                    assertNotNull("Cada usuario está en su shard tras el reparto",
+                            fourShards.shardFor(user.getId()).getUserById(user.getId()));
+                }
+                assertTrue("Los IDs nuevos siguen siendo únicos",
+                        fourShards.createUser(new User("Dave", "dave@example.com", 40)).getId() > single.getId());
+                System.out.println("[TEST 27] ✅ ÉXITO - Reparto: " + reshard);
+            }
+        } finally {
+            for (ReplicaRouter router : routers) {
+                router.close();
+            }
+            for (Connection connection : keepAlive) {
+                connection.close();
+            }
+        }
+    }
+    
+    /**
+     * Test case 28: Test que el registro de cambios guarda altas, modificaciones y bajas en
+     * orden y que un consumidor los recibe por lotes y reanuda desde su posición guardada
+     */
+    @Test
+    public void testChangeFeed() throws SQLException {
+        System.out.println("\n[TEST 28] testChangeFeed - Iniciando...");
+        // Arrange
+        cleanChangeFeed();
+        try {
+            userDAO.setChangeFeedEnabled(true);
+            List<List<UserChange>> batches = new ArrayList<>();
+            
+            // Act
+            userDAO.createUsers(Arrays.asList(
+                new User("Alice", "alice@example.com", 28),
+                new User("Bob", "bob@example.com", 35)
+            ));
+            User carol = userDAO.createUser(new User("Carol", "carol@example.com", 41));
+            User stale = new User(carol);
+            carol.setAge(42);
+            userDAO.updateUser(carol);
+            try {
+                userDAO.updateUser(stale);
+                fail("La versión antigua debe provocar un conflicto");
+            } catch (OptimisticLockException expected) {
+                // El conflicto no debe quedar registrado
+            }
+            userDAO.deleteUser(carol.getId());
+            
+            List<Integer> polled = new ArrayList<>();
+            try (UserChangeConsumer consumer = new UserChangeConsumer(userDAO, "test", 2, batches::add)) {
+                for (int i = 0; i < 4; i++) {
+                    polled.add(consumer.poll());
+                }
+            }
+            List<UserChange> changes = new ArrayList<>();
+            batches.forEach(changes::addAll);
+            
+            List<UserChange> resumed = new ArrayList<>();
+            UserChangeConsumer restarted = new UserChangeConsumer(userDAO, "test", 10, resumed::addAll);
+            int afterRestart = restarted.poll();
+            userDAO.createUser(new User("Dave", "dave@example.com", 50));
+            int afterNewChange = restarted.poll();
+            int purged = userDAO.purgeChangesThrough(restarted.getOffset() - 1);
+            
+            // Una transacción lenta: su secuencia aún no es visible cuando se lee la siguiente
+            userDAO.createUser(new User("Eve", "eve@example.com", 29));
+            long slow = userDAO.getLastChangeSequence();
+            userDAO.createUser(new User("Frank", "frank@example.com", 31));
+            moveChangeSequence(slow, -slow);
+            restarted.setGapTimeoutMillis(0);
+            int pastGap = restarted.poll();
+            int pendingGaps = restarted.getPendingGapCount();
+            moveChangeSequence(-slow, slow);
+            int lateChanges = restarted.poll();
+            
+            // Assert
+            assertEquals(Arrays.asList(2, 2, 1, 0), polled);
+            assertEquals(Arrays.asList(UserChange.Type.CREATE, UserChange.Type.CREATE, UserChange.Type.CREATE,
+                    UserChange.Type.UPDATE, UserChange.Type.DELETE),
+                    changes.stream().map(UserChange::getType).collect(Collectors.toList()));
+            for (int i = 1; i < changes.size(); i++) {
+                assertTrue("Los cambios llegan en orden",
+                        changes.get(i - 1).getSequence() < changes.get(i).getSequence());
+            }
+            UserChange update = changes.get(3);
+            assertEquals(carol.getId(), update.getUserId());
+            assertEquals(42, update.getUser().getAge());
+            assertEquals(1, update.getUser().getVersion());
+            assertNull("Una baja no lleva datos del usuario", changes.get(4).getUser());
+            assertEquals("El consumidor reanuda tras el último cambio procesado", 0, afterRestart);
+            assertEquals(1, afterNewChange);
+            assertEquals("Dave", resumed.get(0).getUser().getName());
+            assertEquals(5, purged);
+            assertEquals("La entrega continúa tras el hueco", 1, pastGap);
+            assertEquals(1, pendingGaps);
+            assertEquals("La secuencia saltada se entrega al aparecer", 1, lateChanges);
+            assertEquals("Eve", resumed.get(resumed.size() - 1).getUser().getName());
+            assertEquals(0, restarted.getPendingGapCount());
+            System.out.println("[TEST 28] ✅ ÉXITO - Cambios entregados: " + changes.size()
+                    + ", posición final: " + restarted.getOffset());
+        } finally {
+            userDAO.setChangeFeedEnabled(false);
+            cleanChangeFeed();
+        }
+    }
+    
+    private static void moveChangeSequence(long from, long to) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE user_changes SET seq = ? WHERE seq = ?")) {
+            pstmt.setLong(1, to);
+            pstmt.setLong(2, from);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    private static void cleanChangeFeed() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM user_changes");
+            stmt.executeUpdate("DELETE FROM user_change_offsets");
+        }
+    }
+    
+    /**
+     * Test case 29: Test que getUsersModifiedSince devuelve solo los usuarios modificados
+     * desde un momento, en orden de updated_at, y que se puede paginar sin repetir usuarios
+     */
+    @Test
+    public void testUsersModifiedSince() throws Exception {
+        System.out.println("\n[TEST 29] testUsersModifiedSince - Iniciando...");
+        // Arrange
+        userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        User bob = userDAO.createUser(new User("Bob", "bob@example.com", 35));
+        userDAO.createUser(new User("Carol", "carol@example.com", 41));
+        Thread.sleep(20);
+        Instant mark = Instant.now();
+        Thread.sleep(20);
+        
+        // Act
+        bob.setAge(36);
+        userDAO.updateUser(bob);
+        List<User> modified = userDAO.getUsersModifiedSince(mark, 10);
+        
+        List<User> pages = new ArrayList<>(userDAO.getUsersModifiedSince(Instant.EPOCH, 2));
+        User last = pages.get(pages.size() - 1);
+        pages.addAll(userDAO.getUsersModifiedSince(last.getUpdatedAt(), last.getId(), 2));
+        
+        // Assert
+        assertEquals(1, modified.size());
+        assertEquals(bob.getId(), modified.get(0).getId());
+        assertEquals(36, modified.get(0).getAge());
+        assertFalse("updated_at se actualiza en cada UPDATE", modified.get(0).getUpdatedAt().isBefore(mark));
+        assertEquals(3, pages.size());
+        assertEquals("Las páginas no repiten usuarios", 3, pages.stream().mapToInt(User::getId).distinct().count());
+        assertEquals("El usuario modificado es el último", bob.getId(), pages.get(2).getId());
+        for (int i = 1; i < pages.size(); i++) {
+            assertFalse(pages.get(i).getUpdatedAt().isBefore(pages.get(i - 1).getUpdatedAt()));
+        }
+        System.out.println("[TEST 29] ✅ ÉXITO - Modificados desde " + mark + ": " + modified.size());
+    }
+    
+    /**
+     * Test case 30: Test que UserNearCache carga una copia local, responde por ID y por email
+     * y aplica altas, modificaciones y bajas al refrescarse
+     */
+    @Test
+    public void testUserNearCache() throws SQLException {
+        System.out.println("\n[TEST 30] testUserNearCache - Iniciando...");
+        // Arrange
+        cleanChangeFeed();
+        try {
+            userDAO.setChangeFeedEnabled(true);
+            User alice = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+            User bob = userDAO.createUser(new User("Bob", "bob@example.com", 35));
+            List<User> bulk = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                bulk.add(new User("User " + i, "user" + i + "@example.com", 20 + i % 50));
+            }
+            userDAO.createUsers(bulk);
+            
+            UserNearCache nearCache = new UserNearCache(userDAO);
+            nearCache.setApplyFeedDeletes(true);
+            nearCache.load();
+            int loaded = nearCache.size();
+            
+            // Act
+            bob.setEmail("robert@example.com");
+            userDAO.updateUser(bob);
+            User carol = userDAO.createUser(new User("Carol", "carol@example.com", 41));
+            userDAO.deleteUser(alice.getId());
+            int[] removed = new int[1000];
+            for (int i = 0; i < removed.length; i++) {
+                removed[i] = bulk.get(i * 2).getId();
+            }
+            userDAO.deleteUsers(removed);
+            int applied = nearCache.refresh();
+            int reapplied = nearCache.refresh();
+            StringBuilder name = new StringBuilder();
+            
+            // Assert
+            assertEquals(2002, loaded);
+            assertEquals(1003, applied);
+            assertEquals("Releer el margen no vuelve a aplicar cambios", 0, reapplied);
+            assertEquals(1002, nearCache.size());
+            assertEquals(0, nearCache.idForEmail("bob@example.com"));
+            assertEquals(bob.getId(), nearCache.idForEmail(new StringBuilder("robert@example.com")));
+            assertEquals(carol.getId(), nearCache.getUserByEmail("carol@example.com").getId());
+            assertFalse(nearCache.containsId(alice.getId()));
+            assertTrue(nearCache.appendName(carol.getId(), name));
+            assertEquals("Carol", name.toString());
+            assertEquals(41, nearCache.ageOf(carol.getId()));
+            for (int i = 0; i < bulk.size(); i++) {
+                User user = bulk.get(i);
+                boolean deleted = i % 2 == 0;
+                assertEquals(!deleted, nearCache.containsId(user.getId()));
+                assertEquals(deleted ? 0 : user.getId(), nearCache.idForEmail(user.getEmail()));
+            }
+            User copy = nearCache.getUserById(bob.getId());
+            assertEquals("Bob", copy.getName());
+            assertEquals(1, copy.getVersion());
+            System.out.println("[TEST 30] ✅ ÉXITO - Usuarios en la copia: " + nearCache.size()
+                    + ", memoria: " + nearCache.getMemoryBytes() + " bytes");
+        } finally {
+            userDAO.setChangeFeedEnabled(false);
+            cleanChangeFeed();
+        }
+    }
+    
+    /**
+     * Test case 31: Test que una instantánea en fichero mapeado responde por ID y por email y
+     * que UserNearCache arranca desde ella y recupera los cambios posteriores
+     */
+    @Test
+    public void testUserSnapshot() throws Exception {
+        System.out.println("\n[TEST 31] testUserSnapshot - Iniciando...");
+        // Arrange
+        Path dir = Files.createTempDirectory("user-snapshot");
+        Path file = dir.resolve("users.snapshot");
+        Path fromTable = dir.resolve("table.snapshot");
+        Path corrupt = dir.resolve("corrupt.snapshot");
+        try {
+            User jose = userDAO.createUser(new User("José Núñez", "jose@example.com", 52));
+            List<User> bulk = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                bulk.add(new User("User " + i, "user" + i + "@example.com", 20 + i % 50));
+            }
+            userDAO.createUsers(bulk);
+            UserNearCache source = new UserNearCache(userDAO);
+            source.load();
+            
+            // Act
+            source.writeSnapshot(file);
+            UserSnapshot snapshot = UserSnapshot.open(file);
+            StringBuilder name = new StringBuilder();
+            boolean nameFound = snapshot.appendName(jose.getId(), name);
+            
+            jose.setAge(53);
+            userDAO.updateUser(jose);
+            User late = userDAO.createUser(new User("Late", "late@example.com", 30));
+            UserNearCache restarted = new UserNearCache(userDAO);
+            restarted.load(snapshot);
+            int beforeRefresh = restarted.size();
+            int applied = restarted.refresh();
+            
+            UserSnapshot.write(userDAO, fromTable);
+            UserSnapshot tableSnapshot = UserSnapshot.open(fromTable);
+            Files.write(corrupt, new byte[] {1, 2, 3, 4});
+            
+            // Assert
+            assertEquals(501, snapshot.size());
+            assertTrue(nameFound);
+            assertEquals("José Núñez", name.toString());
+            assertEquals(jose.getId(), snapshot.idForEmail("jose@example.com"));
+            assertEquals(bulk.get(123).getId(), snapshot.idForEmail(new StringBuilder("user123@example.com")));
+            assertEquals(0, snapshot.idForEmail("nobody@example.com"));
+            assertEquals(43, snapshot.ageOf(bulk.get(123).getId()));
+            assertEquals("user7@example.com", snapshot.getUserById(bulk.get(7).getId()).getEmail());
+            assertFalse(snapshot.containsId(late.getId()));
+            assertFalse("La cabecera guarda el updated_at más reciente", snapshot.getWatermark().equals(Instant.EPOCH));
+            
+            assertEquals(501, beforeRefresh);
+            assertEquals("El refresco aplica la modificación y el alta posteriores", 2, applied);
+            assertEquals(53, restarted.ageOf(jose.getId()));
+            assertEquals(late.getId(), restarted.idForEmail("late@example.com"));
+            assertEquals(502, tableSnapshot.size());
+            assertEquals(53, tableSnapshot.getUserByEmail("jose@example.com").getAge());
+            try {
+                UserSnapshot.open(corrupt);
+                fail("Un fichero que no es una instantánea debe rechazarse");
+            } catch (IOException expected) {
+                // Esperado
+            }
+            System.out.println("[TEST 31] ✅ ÉXITO - Instantánea de " + snapshot.size() + " usuarios, "
+                    + Files.size(file) + " bytes");
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(fromTable);
+            Files.deleteIfExists(corrupt);
+            Files.deleteIfExists(dir);
+        }
+    }
+    
+    /**
+     * Test case 32: Test que getUserByEmail y existsByEmails encuentran los emails registrados
+     * y que el filtro de emails descarta los desconocidos sin perder los creados después
+     */
+    @Test
+    public void testEmailLookup() throws SQLException {
+        System.out.println("\n[TEST 32] testEmailLookup - Iniciando...");
+        // Arrange
+        User alice = userDAO.createUser(new User("Alice", "alice@example.com", 28));
+        userDAO.createUser(new User("Bob", "bob@example.com", 35));
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            emails.add("missing" + i + "@example.com");
+        }
+        emails.add("bob@example.com");
+        emails.add("alice@example.com");
+        emails.add("alice@example.com");
+        
+        // Act
+        User found = userDAO.getUserByEmail("alice@example.com");
+        User missing = userDAO.getUserByEmail("nobody@example.com");
+        Set<String> registered = userDAO.existsByEmails(emails);
+        
+        EmailBloomFilter filter = userDAO.buildEmailFilter(0.01);
+        User filteredMissing = userDAO.getUserByEmail("nobody@example.com");
+        User carol = userDAO.createUser(new User("Carol", "carol@example.com", 41));
+        User foundAfterBuild = userDAO.getUserByEmail("carol@example.com");
+        Set<String> registeredWithFilter = userDAO.existsByEmails(emails);
+        
+        // Assert
+        assertNotNull(found);
+        assertEquals(alice.getId(), found.getId());
+        assertNull(missing);
+        assertEquals(new HashSet<>(Arrays.asList("alice@example.com", "bob@example.com")), registered);
+        assertNull(filteredMissing);
+        assertTrue("El filtro descarta emails no registrados", filter.getNegativeCount() > 0);
+        assertNotNull("Los emails escritos por el DAO se añaden al filtro", foundAfterBuild);
+        assertEquals(carol.getId(), foundAfterBuild.getId());
+        assertEquals(registered, registeredWithFilter);
+        System.out.println("[TEST 32] ✅ ÉXITO - Emails registrados: " + registered.size()
+                + ", descartados por el filtro: " + filter.getNegativeCount());
+    }
+    
+    /**
+     * Test case 33: Test que el pool reutiliza primero la última conexión devuelta, solo valida
+     * las conexiones ociosas tras la ventana de validación, restablece autocommit y solo lectura
+     * al devolverlas y cierra las conexiones ociosas caducadas
+     */
+    @Test
+    @EmbeddedOnly
+    public void testConnectionPool() throws Exception {
+        System.out.println("\n[TEST 33] testConnectionPool - Iniciando...");
+        // Arrange
+        String url = "jdbc:h2:mem:pool_test;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        Connection keepAlive = openEmbeddedDatabase(url);
+        try (ConnectionPool pool = new ConnectionPool(url, "sa", "", 2, 1000, 60000);
+             ConnectionPool evictingPool = new ConnectionPool(url, "sa", "", 2, 1000, 100)) {
+            Connection first = pool.getConnection();
+            Connection second = pool.getConnection();
+            Connection firstPhysical = first.unwrap(Connection.class);
+            Connection secondPhysical = second.unwrap(Connection.class);
+            
+            // Act
+            first.close();
+            second.close();
+            Connection reused;
+            try (Connection c = pool.getConnection()) {
+                reused = c.unwrap(Connection.class);
+            }
+            
+            boolean autoCommitAfterReturn;
+            boolean readOnlyAfterReturn;
+            int uncommittedRows;
+            try (Connection c = pool.getConnection()) {
+                c.setAutoCommit(false);
+                c.setReadOnly(true);
+                try (PreparedStatement stmt = c.prepareStatement(
+                        "INSERT INTO users (name, email, age) VALUES ('Pool', 'pool@example.com', 30)")) {
+                    stmt.executeUpdate();
+                }
+            }
+            try (Connection c = pool.getConnection();
+                 Statement stmt = c.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users WHERE email = 'pool@example.com'")) {
+                autoCommitAfterReturn = c.getAutoCommit();
+                readOnlyAfterReturn = c.isReadOnly();
+                rs.next();
+                uncommittedRows = rs.getInt(1);
+            }
+            
+            // Una conexión recién devuelta se presta sin validar, aunque esté rota
+            secondPhysical.close();
+            Connection unvalidated;
+            try (Connection c = pool.getConnection()) {
+                unvalidated = c.unwrap(Connection.class);
+            }
+            long destroyedBeforeWindow = pool.getStats().getDestroyedCount();
+            
+            // Pasada la ventana de validación, una conexión rota se descarta al prestarla
+            try (Connection c = pool.getConnection()) {
+                firstPhysical = c.unwrap(Connection.class);
+            }
+            firstPhysical.close();
+            Thread.sleep(600);
+            Connection validated;
+            boolean validatedUsable;
+            try (Connection c = pool.getConnection()) {
+                validated = c.unwrap(Connection.class);
+                validatedUsable = c.isValid(1);
+            }
+            PoolStats stats = pool.getStats();
+            
+            evictingPool.getConnection().close();
+            int idleBeforeEviction = evictingPool.getStats().getIdle();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (evictingPool.getStats().getIdle() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            PoolStats evicted = evictingPool.getStats();
+            
+            // Assert
+            assertSame("Se reutiliza primero la última conexión devuelta", secondPhysical, reused);
+            assertNotSame(firstPhysical, secondPhysical);
+            assertTrue("Autocommit se restablece al devolver la conexión", autoCommitAfterReturn);
+            assertFalse("Solo lectura se restablece al devolver la conexión", readOnlyAfterReturn);
+            assertEquals("La transacción abierta se deshace al devolver la conexión", 0, uncommittedRows);
+            assertSame("Dentro de la ventana la conexión no se valida", secondPhysical, unvalidated);
+            assertEquals("La conexión rota se cierra al devolverla", 1, destroyedBeforeWindow);
+            assertNotSame("Fuera de la ventana la conexión rota se descarta", firstPhysical, validated);
+            assertTrue(validatedUsable);
+            assertEquals(2, stats.getDestroyedCount());
+            assertEquals(1, idleBeforeEviction);
+            assertEquals("El evictor cierra las conexiones ociosas caducadas", 0, evicted.getIdle());
+            assertEquals(0, evicted.getTotal());
+            assertEquals(1, evicted.getDestroyedCount());
+            System.out.println("[TEST 33] ✅ ÉXITO - Conexiones creadas: " + stats.getCreatedCount()
+                    + ", descartadas: " + stats.getDestroyedCount() + ", expulsadas por el evictor: "
+                    + evicted.getDestroyedCount());
+        } finally {
+            keepAlive.close();
+        }
+    }
+    
+    /**
+     * Test case 34: Test que las páginas cargadas en segundo plano llegan a la tabla con el
+     * mismo orden de callbacks que usa UserGUI, y que una carga fallida libera su reserva
+     */
+    @Test
+    public void testBackgroundPageLoad() throws SQLException {
+        System.out.println("\n[TEST 34] testBackgroundPageLoad - Iniciando...");
+        // Arrange
+        for (int i = 0; i < 3; i++) {
+            userDAO.createUser(new User("User " + i, "user" + i + "@example.com", 20 + i));
+        }
+        UserTableModel model = new UserTableModel(2);
+        model.reset(userDAO::getUsersPage);
+        List<Integer> added = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        
+        // Act
+        UserTableModel.PageLoad first = model.nextPage();
+        UserGUI.deliver(CompletableFuture.completedFuture(first.fetch()),
+                page -> added.add(model.apply(first, page)), () -> model.finish(first), errors::add);
+        
+        UserTableModel.PageLoad failed = model.nextPage();
+        CompletableFuture<UserPage> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new SQLException("Fallo simulado"));
+        UserGUI.deliver(failure, page -> added.add(model.apply(failed, page)), () -> model.finish(failed), errors::add);
+        
+        UserTableModel.PageLoad retry = model.nextPage();
+        UserGUI.deliver(CompletableFuture.completedFuture(retry.fetch()),
+                page -> added.add(model.apply(retry, page)), () -> model.finish(retry), errors::add);
+        
+        // Assert
+        assertEquals("Las páginas en segundo plano se añaden a la tabla", Arrays.asList(2, 1), added);
+        assertEquals(3, model.getRowCount());
+        assertFalse(model.hasMore());
+        assertFalse(model.isLoading());
+        assertEquals(1, errors.size());
+        assertEquals("Fallo simulado", errors.get(0).getMessage());
+        System.out.println("[TEST 34] ✅ ÉXITO - Filas cargadas en segundo plano: " + model.getRowCount());
+    }
+    
+    /**
+     * Abre una base de datos H2 en memoria con las tablas de la aplicación
+     * La base de datos existe mientras la conexión devuelta siga abierta
+     */
+    private static Connection openEmbeddedDatabase(String url) throws SQLException {
+        Connection connection = DriverManager.getConnection(url, "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) NOT NULL, "
+                    + "email VARCHAR(100) NOT NULL UNIQUE, age INT, version INT NOT NULL DEFAULT 0, "
+                    + "updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3))");
+            stmt.execute("CREATE TABLE user_id_sequence (name VARCHAR(64) PRIMARY KEY, next_id INT NOT NULL)");
+            stmt.execute("CREATE TABLE user_changes (seq BIGINT AUTO_INCREMENT PRIMARY KEY, user_id INT NOT NULL, "
+                    + "change_type CHAR(1) NOT NULL, name VARCHAR(100), email VARCHAR(100), age INT, version INT, "
+                    + "changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3))");
+        }
+        return connection;
+    }
 }